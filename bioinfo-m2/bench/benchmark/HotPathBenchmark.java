@@ -0,0 +1,253 @@
+package benchmark;
+
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.Module;
+import com.google.inject.Provides;
+import com.google.inject.name.Named;
+import com.google.inject.util.Modules;
+
+import model.Gene;
+import model.Kingdom;
+import model.Organism;
+import model.Sum;
+import service.impl.CodonCounter;
+import service.interfaces.IFileService;
+import service.interfaces.IGeneService;
+import service.interfaces.IParseService;
+import service.interfaces.IStatisticsService;
+
+import org.apache.poi.ss.usermodel.Workbook;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Benchmarks of the parse -> count -> probability -> workbook hot path on synthetic replicons.
+ * Every operation runs on the calling thread (the services get a direct executor) so that the allocation
+ * counter of the thread covers all the work.
+ *
+ * Usage: java benchmark.HotPathBenchmark [warmupIterations] [measuredIterations]
+ */
+public class HotPathBenchmark {
+    private static final com.sun.management.ThreadMXBean THREAD_BEAN = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private final IParseService parseService;
+    private final IGeneService geneService;
+    private final IStatisticsService statisticsService;
+    private final IFileService fileService;
+    private final Organism organism;
+
+    /**
+     * One benchmarked call, returning the number of CDS it handled.
+     */
+    private interface Operation {
+        long run() throws Exception;
+    }
+
+    /**
+     * Replaces the thread pools of the application module with a direct executor.
+     */
+    private static class DirectExecutorModule extends AbstractModule {
+        @Override
+        protected void configure() {
+        }
+
+        @Provides
+        ListeningExecutorService provideListeningExecutorService() {
+            return MoreExecutors.newDirectExecutorService();
+        }
+
+        @Provides @Named("NetworkStage")
+        ListeningExecutorService provideNetworkStageExecutor() {
+            return MoreExecutors.newDirectExecutorService();
+        }
+
+        @Provides @Named("ParseStage")
+        ListeningExecutorService provideParseStageExecutor() {
+            return MoreExecutors.newDirectExecutorService();
+        }
+
+        @Provides @Named("WriteStage")
+        ListeningExecutorService provideWriteStageExecutor() {
+            return MoreExecutors.newDirectExecutorService();
+        }
+
+        @Provides @Named("ProgramStatsExecutor")
+        ListeningExecutorService provideProgramStatsExecutor() {
+            return MoreExecutors.newDirectExecutorService();
+        }
+    }
+
+    private HotPathBenchmark(Injector injector) {
+        this.parseService = injector.getInstance(IParseService.class);
+        this.geneService = injector.getInstance(IGeneService.class);
+        this.statisticsService = injector.getInstance(IStatisticsService.class);
+        this.fileService = injector.getInstance(IFileService.class);
+        this.organism = new Organism("Synthetic organism", "PRJNA0", "Benchmark", "Synthetic", new Date(), new ArrayList<>(), Kingdom.Bacteria.getId());
+    }
+
+    private Gene newGene(SyntheticGenome genome) {
+        return geneService.createGene("NC_" + genome.name(), "chromosome", null, 0, 0);
+    }
+
+    private Gene countGene(SyntheticGenome genome, byte[] fasta) throws Exception {
+        Gene gene = newGene(genome);
+        parseService.extractSequences(new ByteArrayInputStream(fasta), gene, (sequence, length) -> CodonCounter.count(sequence, length, gene)).get();
+        return gene;
+    }
+
+    private List<Result> run(SyntheticGenome genome, int warmup, int iterations, Path outputDirectory) throws Exception {
+        byte[] fasta = genome.generate();
+        List<byte[]> sequences = new ArrayList<>();
+        parseService.extractSequences(new ByteArrayInputStream(fasta), newGene(genome), (sequence, length) -> {
+            byte[] copy = new byte[length];
+            System.arraycopy(sequence, 0, copy, 0, length);
+            sequences.add(copy);
+        }).get();
+        Gene counted = countGene(genome, fasta);
+        long cds = counted.getTotalCds();
+
+        List<Result> results = new ArrayList<>();
+        results.add(measure(genome, "parse (extractSequences)", warmup, iterations, () -> {
+            Gene gene = newGene(genome);
+            parseService.extractSequences(new ByteArrayInputStream(fasta), gene, (sequence, length) -> { }).get();
+            return gene.getTotalCds();
+        }));
+        results.add(measure(genome, "count (CodonCounter)", warmup, iterations, () -> {
+            Gene gene = newGene(genome);
+            for (byte[] sequence : sequences) {
+                CodonCounter.count(sequence, sequence.length, gene);
+            }
+            return sequences.size();
+        }));
+        results.add(measure(genome, "parse + count", warmup, iterations, () -> countGene(genome, fasta).getTotalCds()));
+        results.add(measure(genome, "computeStatistics", warmup, iterations, () -> {
+            Gene gene = newGene(genome);
+            gene.addCounts(counted);
+            statisticsService.computeStatistics(Kingdom.Bacteria, organism, gene).get();
+            return cds;
+        }));
+        results.add(measure(genome, "computeSum", warmup, iterations, () -> {
+            Sum sum = new Sum(counted.getType(), null, 0, 0);
+            statisticsService.computeSum(Kingdom.Bacteria, organism, sum, counted).get();
+            return cds;
+        }));
+        Gene withStatistics = statisticsService.computeStatistics(Kingdom.Bacteria, organism, countGene(genome, fasta)).get();
+        results.add(measure(genome, "fillWorkbook + write", warmup, iterations, () -> {
+            Workbook workbook = fileService.createWorkbook();
+            fileService.fillWorkbook(organism, withStatistics, workbook);
+            fileService.writeWorkbook(workbook, outputDirectory.toString(), genome.name());
+            return cds;
+        }));
+        return results;
+    }
+
+    private static Result measure(SyntheticGenome genome, String name, int warmup, int iterations, Operation operation) throws Exception {
+        for (int i = 0; i < warmup; i++) {
+            operation.run();
+        }
+
+        long threadId = Thread.currentThread().getId();
+        long gcCount = gcCount();
+        long gcTime = gcTime();
+        long allocated = THREAD_BEAN.getThreadAllocatedBytes(threadId);
+        long cds = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            cds += operation.run();
+        }
+        long elapsed = System.nanoTime() - start;
+
+        Result result = new Result();
+        result.genome = genome;
+        result.name = name;
+        result.opsPerSecond = iterations / (elapsed / 1e9);
+        result.bytesPerCds = cds == 0 ? 0 : (double) (THREAD_BEAN.getThreadAllocatedBytes(threadId) - allocated) / cds;
+        result.gcCount = gcCount() - gcCount;
+        result.gcMillis = gcTime() - gcTime;
+        return result;
+    }
+
+    private static long gcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, bean.getCollectionCount());
+        }
+        return count;
+    }
+
+    private static long gcTime() {
+        long time = 0;
+        for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+            time += Math.max(0, bean.getCollectionTime());
+        }
+        return time;
+    }
+
+    private static class Result {
+        SyntheticGenome genome;
+        String name;
+        double opsPerSecond;
+        double bytesPerCds;
+        long gcCount;
+        long gcMillis;
+
+        @Override
+        public String toString() {
+            return String.format("%-13s %-26s %12.2f %14.1f %8d %8d", genome, name, opsPerSecond, bytesPerCds, gcCount, gcMillis);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int warmup = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+        THREAD_BEAN.setThreadAllocatedMemoryEnabled(true);
+
+        Path outputDirectory = Files.createTempDirectory("benchmark");
+        int status = 1;
+        try {
+            // The application module lives in the default package, so it can only be loaded by name
+            Module applicationModule = (Module) Class.forName("Main").getDeclaredConstructor().newInstance();
+            Injector injector = Guice.createInjector(Modules.override(applicationModule).with(new DirectExecutorModule()));
+            HotPathBenchmark benchmark = new HotPathBenchmark(injector);
+
+            System.out.println(String.format("%-13s %-26s %12s %14s %8s %8s", "Genome", "Benchmark", "ops/s", "B alloc/CDS", "GC count", "GC ms"));
+            for (SyntheticGenome genome : SyntheticGenome.values()) {
+                for (Result result : benchmark.run(genome, warmup, iterations, outputDirectory)) {
+                    System.out.println(result);
+                }
+            }
+            status = 0;
+        } catch (Throwable e) {
+            // Errors too, such as a missing class of the workbook libraries, which would otherwise exit silently
+            e.printStackTrace();
+        } finally {
+            deleteRecursively(outputDirectory);
+            // The pools of the application module are not daemon threads
+            System.exit(status);
+        }
+    }
+
+    private static void deleteRecursively(Path directory) throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+}
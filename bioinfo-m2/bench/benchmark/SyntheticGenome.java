@@ -0,0 +1,75 @@
+package benchmark;
+
+import model.CodingSequence;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/**
+ * Deterministic FASTA-CDS replicons shaped like the files served for real organisms
+ * (NCBI "fasta_cds_na" headers, 70 columns sequence lines).
+ */
+enum SyntheticGenome {
+    Phage(70, 250, 0.50),
+    Bacterium(4300, 320, 0.51),
+    Streptomyces(7800, 350, 0.72);
+
+    private static final int LINE_WIDTH = 70;
+
+    private final int cdsCount;
+    private final int meanCodons;
+    private final double gcContent;
+
+    SyntheticGenome(int cdsCount, int meanCodons, double gcContent) {
+        this.cdsCount = cdsCount;
+        this.meanCodons = meanCodons;
+        this.gcContent = gcContent;
+    }
+
+    byte[] generate() {
+        Random random = new Random(name().hashCode());
+        StringBuilder fasta = new StringBuilder(cdsCount * (meanCodons * 3 + 200));
+        StringBuilder sequence = new StringBuilder();
+        int position = 1;
+
+        for (int cds = 0; cds < cdsCount; cds++) {
+            sequence.setLength(0);
+            sequence.append(CodingSequence.codon_init[random.nextInt(10) < 8 ? 2 : random.nextInt(CodingSequence.codon_init.length)]);
+            int codons = Math.max(30, (int) (meanCodons + random.nextGaussian() * meanCodons / 3));
+            for (int i = 0; i < codons; i++) {
+                sequence.append(nextCodon(random));
+            }
+            sequence.append(CodingSequence.codon_stop[random.nextInt(CodingSequence.codon_stop.length)]);
+
+            int end = position + sequence.length() - 1;
+            String location = random.nextBoolean()
+                    ? position + ".." + end
+                    : "complement(" + position + ".." + end + ")";
+            fasta.append(">lcl|NC_").append(String.format("%06d", ordinal() + 1)).append(".1_cds_WP_").append(100000 + cds)
+                    .append(".1_").append(cds + 1)
+                    .append(" [locus_tag=SYN_").append(cds).append("] [protein=hypothetical protein]")
+                    .append(" [protein_id=WP_").append(100000 + cds).append(".1] [location=").append(location).append("] [gbkey=CDS]\n");
+            for (int i = 0; i < sequence.length(); i += LINE_WIDTH) {
+                fasta.append(sequence, i, Math.min(sequence.length(), i + LINE_WIDTH)).append('\n');
+            }
+            position = end + 1 + random.nextInt(200);
+        }
+
+        return fasta.toString().getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private String nextCodon(Random random) {
+        // Draw nucleotides with the requested GC content, skipping in-frame stop codons
+        while (true) {
+            char[] codon = new char[3];
+            for (int i = 0; i < 3; i++) {
+                boolean gc = random.nextDouble() < gcContent;
+                codon[i] = gc ? (random.nextBoolean() ? 'G' : 'C') : (random.nextBoolean() ? 'A' : 'T');
+            }
+            String candidate = new String(codon);
+            if (!CodingSequence.StopCodon.contains(candidate)) {
+                return candidate;
+            }
+        }
+    }
+}
@@ -1,8 +1,5 @@
-import com.google.api.client.http.HttpTransport;
-import com.google.api.client.http.javanet.NetHttpTransport;
 import com.google.common.util.concurrent.ListeningExecutorService;
 import com.google.common.util.concurrent.MoreExecutors;
-import com.google.common.util.concurrent.RateLimiter;
 import com.google.inject.*;
 import com.google.inject.name.Named;
 
@@ -10,16 +7,23 @@ import controller.MainController;
 import service.impl.*;
 import service.interfaces.*;
 
+import org.apache.http.client.config.RequestConfig;
 import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
 import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.nio.reactor.IOReactorException;
 
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 
 public class Main extends AbstractModule {
+    private Boolean virtualThreads;
+
     @Override
     protected void configure() {
         bind(IHttpService.class).to(HttpServiceImpl.class).asEagerSingleton();
-        bind(HttpTransport.class).to(NetHttpTransport.class).asEagerSingleton();
         bind(IParseService.class).to(ParseServiceImpl.class).asEagerSingleton();
         bind(IFileService.class).to(FileServiceImpl.class).asEagerSingleton();
         bind(IConfigService.class).to(ConfigServiceImpl.class).asEagerSingleton();
@@ -30,33 +34,133 @@ public class Main extends AbstractModule {
         bind(IProgressService.class).to(ProgressServiceImpl.class).asEagerSingleton();
         bind(IProgramStatsService.class).to(ProgramStatsServiceImpl.class).asEagerSingleton();
         bind(IZipService.class).to(ZipServiceImpl.class).asEagerSingleton();
+        bind(IResultStoreService.class).to(ResultStoreServiceImpl.class).asEagerSingleton();
+        bind(IAggregationService.class).to(AggregationServiceImpl.class).asEagerSingleton();
+        bind(IRepliconCacheService.class).to(RepliconCacheServiceImpl.class).asEagerSingleton();
+        bind(IUpdateJournalService.class).to(UpdateJournalServiceImpl.class).asEagerSingleton();
+        bind(IRateLimiterService.class).to(RateLimiterServiceImpl.class).asEagerSingleton();
+        bind(IRetryService.class).to(RetryServiceImpl.class).asEagerSingleton();
+        bind(IBatchFetchService.class).to(BatchFetchServiceImpl.class).asEagerSingleton();
+        bind(IPipelineService.class).to(PipelineServiceImpl.class).asEagerSingleton();
+        bind(IOrganismListService.class).to(OrganismListServiceImpl.class).asEagerSingleton();
+        bind(IPlasmidStoreService.class).to(PlasmidStoreServiceImpl.class).asEagerSingleton();
+        bind(ILocalFastaService.class).to(LocalFastaServiceImpl.class).asEagerSingleton();
     }
 
-    @Provides
-    RateLimiter provideRateLimiter() {
-        return RateLimiter.create(2);
+    @Provides @Singleton
+    PoolingNHttpClientConnectionManager provideConnectionManager() throws IOReactorException {
+        IOReactorConfig ioReactorConfig = IOReactorConfig.custom()
+                .setConnectTimeout(20000)
+                .setSoTimeout(60000)
+                .setSoKeepAlive(true)
+                .build();
+        PoolingNHttpClientConnectionManager connectionManager = new PoolingNHttpClientConnectionManager(new DefaultConnectingIOReactor(ioReactorConfig));
+        connectionManager.setMaxTotal(64);
+        connectionManager.setDefaultMaxPerRoute(32);
+        return connectionManager;
     }
 
-    @Provides
-    CloseableHttpAsyncClient provideHttpAsyncClient() {
-        return HttpAsyncClients.createDefault();
+    @Provides @Singleton
+    CloseableHttpAsyncClient provideHttpAsyncClient(PoolingNHttpClientConnectionManager connectionManager) {
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout(20000)
+                .setSocketTimeout(60000)
+                .build();
+        return HttpAsyncClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                .build();
     }
 
-    @Provides @Named("HttpExecutor")
-    ListeningExecutorService provideHttpListeningExecutorService() {
-        return MoreExecutors.listeningDecorator(Executors.newFixedThreadPool(12));
+    /*
+     * Stages of the replicon pipeline: downloads and reading of the bodies, then parsing and counting of the bytes
+     * read, then writing of the results. Each stage has its own threads and a bounded queue, see StageExecutor.
+     * Only the network stage waits for I/O, so the parse stage is sized for the CPUs.
+     */
+    @Provides @Singleton @Named("NetworkStage")
+    StageExecutor provideNetworkStage(IConfigService configService) {
+        if (useVirtualThreads(configService)) {
+            return StageExecutor.threadPerTask("network", 0, Integer.parseInt(configService.getProperty("networkQueue")), VirtualThreads.newThreadFactory("network"));
+        }
+        return new StageExecutor("network", 0, Integer.parseInt(configService.getProperty("networkThreads")), Integer.parseInt(configService.getProperty("networkQueue")));
+    }
+
+    @Provides @Singleton @Named("ParseStage")
+    StageExecutor provideParseStage(IConfigService configService) {
+        int threads = Integer.parseInt(configService.getProperty("parseThreads"));
+        if (threads <= 0) {
+            threads = Runtime.getRuntime().availableProcessors();
+        }
+        return new StageExecutor("parse", 1, threads, Integer.parseInt(configService.getProperty("parseQueue")));
+    }
+
+    @Provides @Singleton @Named("WriteStage")
+    StageExecutor provideWriteStage(IConfigService configService) {
+        if (useVirtualThreads(configService)) {
+            return StageExecutor.threadPerTask("write", 2, Integer.parseInt(configService.getProperty("writeQueue")), VirtualThreads.newThreadFactory("write"));
+        }
+        return new StageExecutor("write", 2, Integer.parseInt(configService.getProperty("writeThreads")), Integer.parseInt(configService.getProperty("writeQueue")));
+    }
+
+    @Provides @Singleton @Named("NetworkStage")
+    ListeningExecutorService provideNetworkStageExecutor(@Named("NetworkStage") StageExecutor stage) {
+        return MoreExecutors.listeningDecorator(stage);
+    }
+
+    @Provides @Singleton @Named("ParseStage")
+    ListeningExecutorService provideParseStageExecutor(@Named("ParseStage") StageExecutor stage) {
+        return MoreExecutors.listeningDecorator(stage);
+    }
+
+    @Provides @Singleton @Named("WriteStage")
+    ListeningExecutorService provideWriteStageExecutor(@Named("WriteStage") StageExecutor stage) {
+        return MoreExecutors.listeningDecorator(stage);
     }
 
     @Provides
-    ListeningExecutorService provideListeningExecutorService() {
+    ListeningExecutorService provideListeningExecutorService(IConfigService configService) {
+        if (useVirtualThreads(configService)) {
+            return MoreExecutors.listeningDecorator(VirtualThreads.newThreadPerTaskExecutor("io"));
+        }
         return MoreExecutors.listeningDecorator(Executors.newFixedThreadPool(12));
     }
 
+    @Provides @Singleton @Named("RetryScheduler")
+    ScheduledExecutorService provideRetryScheduler() {
+        return Executors.newSingleThreadScheduledExecutor();
+    }
+
+    @Provides @Singleton @Named("BatchScheduler")
+    ScheduledExecutorService provideBatchScheduler() {
+        return Executors.newSingleThreadScheduledExecutor();
+    }
+
+    @Provides @Singleton @Named("HedgeScheduler")
+    ScheduledExecutorService provideHedgeScheduler() {
+        return Executors.newSingleThreadScheduledExecutor();
+    }
+
     @Provides @Named("ProgramStatsExecutor")
     ListeningExecutorService provideProgramStatsExecutor() {
         return  MoreExecutors.listeningDecorator(Executors.newFixedThreadPool(1));
     }
 
+    /**
+     * In the "virtual" execution mode, the executors of blocking I/O (downloads, files) start a virtual thread per
+     * task, so their concurrency is bounded by the rate limiter and the pipeline windows instead of a thread count.
+     * The parse stage stays on platform threads, one per core.
+     */
+    private boolean useVirtualThreads(IConfigService configService) {
+        if (virtualThreads == null) {
+            virtualThreads = "virtual".equals(configService.getProperty("executionMode"));
+            if (virtualThreads && !VirtualThreads.isAvailable()) {
+                System.err.println("Virtual threads need Java 21 or later, running " + System.getProperty("java.version") + " with platform threads");
+                virtualThreads = false;
+            }
+        }
+        return virtualThreads;
+    }
+
     public static void main(String[] args) {
         Injector injector = Guice.createInjector(new Main());
 
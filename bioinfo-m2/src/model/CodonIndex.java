@@ -0,0 +1,94 @@
+package model;
+
+import java.util.Arrays;
+
+/**
+ * 2-bit encoding of the nucleotides (A=0, C=1, G=2, T=3) used to index the count tables.
+ * Dinucleotides are indexed 0..15 and trinucleotides 0..63, in the same order as the
+ * historical map keys (AA, AC, ... TT / AAA, AAC, ... TTT).
+ */
+public final class CodonIndex {
+    public static final int NUCLEOTIDE_COUNT = 4;
+    public static final int DINUCLEOTIDE_COUNT = 16;
+    public static final int TRINUCLEOTIDE_COUNT = 64;
+    public static final int INVALID = -1;
+
+    private static final byte[] CODES = new byte[256];
+    private static final String[] DINUCLEOTIDES = new String[DINUCLEOTIDE_COUNT];
+    private static final String[] TRINUCLEOTIDES = new String[TRINUCLEOTIDE_COUNT];
+
+    static {
+        Arrays.fill(CODES, (byte) INVALID);
+        CodingSequence.Nucleotide[] nucleotides = CodingSequence.Nucleotide.values();
+        for (int i = 0; i < nucleotides.length; i++) {
+            CODES[nucleotides[i].toString().charAt(0)] = (byte) i;
+        }
+        for (int index = 0; index < DINUCLEOTIDE_COUNT; index++) {
+            DINUCLEOTIDES[index] = nucleotides[index >> 2].toString() + nucleotides[index & 3];
+        }
+        for (int index = 0; index < TRINUCLEOTIDE_COUNT; index++) {
+            TRINUCLEOTIDES[index] = nucleotides[index >> 4].toString() + nucleotides[(index >> 2) & 3] + nucleotides[index & 3];
+        }
+    }
+
+    private CodonIndex() {
+    }
+
+    /**
+     * Returns the 2-bit code of the given nucleotide, or {@link #INVALID} if it is not one of ACGT.
+     */
+    public static int code(byte nucleotide) {
+        return CODES[nucleotide & 0xFF];
+    }
+
+    public static int code(char nucleotide) {
+        return nucleotide < CODES.length ? CODES[nucleotide] : INVALID;
+    }
+
+    /**
+     * Returns the index of the dinucleotide starting at the given offset, or {@link #INVALID}.
+     */
+    public static int dinucleotide(CharSequence sequence, int offset) {
+        int c0 = code(sequence.charAt(offset));
+        int c1 = code(sequence.charAt(offset + 1));
+        if ((c0 | c1) < 0) {
+            return INVALID;
+        }
+        return (c0 << 2) | c1;
+    }
+
+    /**
+     * Returns the index of the trinucleotide starting at the given offset, or {@link #INVALID}.
+     */
+    public static int trinucleotide(CharSequence sequence, int offset) {
+        int c0 = code(sequence.charAt(offset));
+        int c1 = code(sequence.charAt(offset + 1));
+        int c2 = code(sequence.charAt(offset + 2));
+        if ((c0 | c1 | c2) < 0) {
+            return INVALID;
+        }
+        return (c0 << 4) | (c1 << 2) | c2;
+    }
+
+    /**
+     * Returns the index of the dinucleotide starting at the given offset of an already validated sequence.
+     */
+    public static int dinucleotide(byte[] sequence, int offset) {
+        return (CODES[sequence[offset] & 0xFF] << 2) | CODES[sequence[offset + 1] & 0xFF];
+    }
+
+    /**
+     * Returns the index of the trinucleotide starting at the given offset of an already validated sequence.
+     */
+    public static int trinucleotide(byte[] sequence, int offset) {
+        return (CODES[sequence[offset] & 0xFF] << 4) | (CODES[sequence[offset + 1] & 0xFF] << 2) | CODES[sequence[offset + 2] & 0xFF];
+    }
+
+    public static String dinucleotide(int index) {
+        return DINUCLEOTIDES[index];
+    }
+
+    public static String trinucleotide(int index) {
+        return TRINUCLEOTIDES[index];
+    }
+}
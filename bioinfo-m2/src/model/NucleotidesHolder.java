@@ -1,6 +1,8 @@
 package model;
 
+import java.util.Collections;
 import java.util.LinkedHashMap;
+import java.util.Map;
 
 public abstract class NucleotidesHolder {
     private String type;
@@ -18,25 +20,14 @@ public abstract class NucleotidesHolder {
     private long totalCds;
     private int totalUnprocessedCds;
 
-    // Trinucleotide
-    private LinkedHashMap<String, Integer> trinuStatPhase0;
-    private LinkedHashMap<String, Double> trinuProbaPhase0;
-    private LinkedHashMap<String, Integer> trinuPrefPhase0;
+    // Trinucleotide, indexed by phase then by CodonIndex
+    private final long[][] trinuStat = new long[3][CodonIndex.TRINUCLEOTIDE_COUNT];
+    private final double[][] trinuProba = new double[3][CodonIndex.TRINUCLEOTIDE_COUNT];
+    private final int[][] trinuPref = new int[3][CodonIndex.TRINUCLEOTIDE_COUNT];
 
-    private LinkedHashMap<String, Integer> trinuStatPhase1;
-    private LinkedHashMap<String, Double> trinuProbaPhase1;
-    private LinkedHashMap<String, Integer> trinuPrefPhase1;
-
-    private LinkedHashMap<String, Integer> trinuStatPhase2;
-    private LinkedHashMap<String, Double> trinuProbaPhase2;
-    private LinkedHashMap<String, Integer> trinuPrefPhase2;
-
-    // Dinucleotide
-    private LinkedHashMap<String, Integer> dinuStatPhase0;
-    private LinkedHashMap<String, Double> dinuProbaPhase0;
-
-    private LinkedHashMap<String, Integer> dinuStatPhase1;
-    private LinkedHashMap<String, Double> dinuProbaPhase1;
+    // Dinucleotide, indexed by phase then by CodonIndex
+    private final long[][] dinuStat = new long[2][CodonIndex.DINUCLEOTIDE_COUNT];
+    private final double[][] dinuProba = new double[2][CodonIndex.DINUCLEOTIDE_COUNT];
 
     NucleotidesHolder(String type, String path, int totalDinucleotide, int totalTrinucleotide)
     {
@@ -98,108 +89,150 @@ public abstract class NucleotidesHolder {
         this.totalDinucleotide = totalDinucleotide;
     }
 
-    public LinkedHashMap<String, Integer> getTrinuStatPhase0() {
-        return trinuStatPhase0;
+    public long[] getTrinuStat(int phase) {
+        return trinuStat[phase];
     }
 
-    public void setTrinuStatPhase0(LinkedHashMap<String, Integer> trinuStatPhase0) {
-        this.trinuStatPhase0 = trinuStatPhase0;
+    public double[] getTrinuProba(int phase) {
+        return trinuProba[phase];
     }
 
-    public LinkedHashMap<String, Double> getTrinuProbaPhase0() {
-        return trinuProbaPhase0;
+    public int[] getTrinuPref(int phase) {
+        return trinuPref[phase];
     }
 
-    public void setTrinuProbaPhase0(LinkedHashMap<String, Double> trinuProbaPhase0) {
-        this.trinuProbaPhase0 = trinuProbaPhase0;
+    public long[] getDinuStat(int phase) {
+        return dinuStat[phase];
     }
-    
-    public LinkedHashMap<String, Integer> getTrinuPrefPhase0() {
-    	return trinuPrefPhase0;
+
+    public double[] getDinuProba(int phase) {
+        return dinuProba[phase];
     }
 
-    public void setTrinuPrefPhase0(LinkedHashMap<String, Integer> trinuPrefPhase0) {
-        this.trinuPrefPhase0 = trinuPrefPhase0;
+    /**
+     * Adds the raw counts (not the probabilities) of the given holder to this one.
+     */
+    public void addCounts(NucleotidesHolder other) {
+        for (int phase = 0; phase < trinuStat.length; phase++) {
+            addTo(trinuStat[phase], other.trinuStat[phase]);
+            addTo(trinuPref[phase], other.trinuPref[phase]);
+        }
+        for (int phase = 0; phase < dinuStat.length; phase++) {
+            addTo(dinuStat[phase], other.dinuStat[phase]);
+        }
+        totalPrefTrinu0 += other.totalPrefTrinu0;
+        totalPrefTrinu1 += other.totalPrefTrinu1;
+        totalPrefTrinu2 += other.totalPrefTrinu2;
+        totalDinucleotide += other.totalDinucleotide;
+        totalTrinucleotide += other.totalTrinucleotide;
+        totalUnprocessedCds += other.totalUnprocessedCds;
+        totalCds += other.totalCds;
     }
 
-    public LinkedHashMap<String, Integer> getTrinuStatPhase1() {
-        return trinuStatPhase1;
+    private static void addTo(long[] target, long[] source) {
+        for (int i = 0; i < target.length; i++) {
+            target[i] += source[i];
+        }
     }
 
-    public void setTrinuStatPhase1(LinkedHashMap<String, Integer> trinuStatPhase1) {
-        this.trinuStatPhase1 = trinuStatPhase1;
+    private static void addTo(int[] target, int[] source) {
+        for (int i = 0; i < target.length; i++) {
+            target[i] += source[i];
+        }
     }
 
-    public LinkedHashMap<String, Double> getTrinuProbaPhase1() {
-        return trinuProbaPhase1;
+    // Read-only map views kept for the code reading the tables by codon name (Excel output).
+
+    public Map<String, Long> getTrinuStatPhase0() {
+        return trinucleotideView(trinuStat[0]);
     }
 
-    public void setTrinuProbaPhase1(LinkedHashMap<String, Double> trinuProbaPhase1) {
-        this.trinuProbaPhase1 = trinuProbaPhase1;
+    public Map<String, Double> getTrinuProbaPhase0() {
+        return trinucleotideView(trinuProba[0]);
     }
-    
-    public LinkedHashMap<String, Integer> getTrinuPrefPhase1() {
-    	return trinuPrefPhase1;
+
+    public Map<String, Integer> getTrinuPrefPhase0() {
+        return trinucleotideView(trinuPref[0]);
     }
 
-    public void setTrinuPrefPhase1(LinkedHashMap<String, Integer> trinuPrefPhase1) {
-        this.trinuPrefPhase1 = trinuPrefPhase1;
+    public Map<String, Long> getTrinuStatPhase1() {
+        return trinucleotideView(trinuStat[1]);
     }
 
-    public LinkedHashMap<String, Integer> getTrinuStatPhase2() {
-        return trinuStatPhase2;
+    public Map<String, Double> getTrinuProbaPhase1() {
+        return trinucleotideView(trinuProba[1]);
     }
 
-    public void setTrinuStatPhase2(LinkedHashMap<String, Integer> trinuStatPhase2) {
-        this.trinuStatPhase2 = trinuStatPhase2;
+    public Map<String, Integer> getTrinuPrefPhase1() {
+        return trinucleotideView(trinuPref[1]);
     }
 
-    public LinkedHashMap<String, Double> getTrinuProbaPhase2() {
-        return trinuProbaPhase2;
+    public Map<String, Long> getTrinuStatPhase2() {
+        return trinucleotideView(trinuStat[2]);
     }
 
-    public void setTrinuProbaPhase2(LinkedHashMap<String, Double> trinuProbaPhase2) {
-        this.trinuProbaPhase2 = trinuProbaPhase2;
+    public Map<String, Double> getTrinuProbaPhase2() {
+        return trinucleotideView(trinuProba[2]);
     }
-    
-    public LinkedHashMap<String, Integer> getTrinuPrefPhase2() {
-    	return trinuPrefPhase2;
+
+    public Map<String, Integer> getTrinuPrefPhase2() {
+        return trinucleotideView(trinuPref[2]);
     }
 
-    public void setTrinuPrefPhase2(LinkedHashMap<String, Integer> trinuPrefPhase2) {
-        this.trinuPrefPhase2 = trinuPrefPhase2;
+    public Map<String, Long> getDinuStatPhase0() {
+        return dinucleotideView(dinuStat[0]);
     }
 
-    public LinkedHashMap<String, Integer> getDinuStatPhase0() {
-        return dinuStatPhase0;
+    public Map<String, Double> getDinuProbaPhase0() {
+        return dinucleotideView(dinuProba[0]);
     }
 
-    public void setDinuStatPhase0(LinkedHashMap<String, Integer> dinuStatPhase0) {
-        this.dinuStatPhase0 = dinuStatPhase0;
+    public Map<String, Long> getDinuStatPhase1() {
+        return dinucleotideView(dinuStat[1]);
     }
 
-    public LinkedHashMap<String, Double> getDinuProbaPhase0() {
-        return dinuProbaPhase0;
+    public Map<String, Double> getDinuProbaPhase1() {
+        return dinucleotideView(dinuProba[1]);
     }
 
-    public void setDinuProbaPhase0(LinkedHashMap<String, Double> dinuProbaPhase0) {
-        this.dinuProbaPhase0 = dinuProbaPhase0;
+    private static Map<String, Long> trinucleotideView(long[] values) {
+        LinkedHashMap<String, Long> view = new LinkedHashMap<>();
+        for (int index = 0; index < values.length; index++) {
+            view.put(CodonIndex.trinucleotide(index), values[index]);
+        }
+        return Collections.unmodifiableMap(view);
     }
 
-    public LinkedHashMap<String, Integer> getDinuStatPhase1() {
-        return dinuStatPhase1;
+    private static Map<String, Integer> trinucleotideView(int[] values) {
+        LinkedHashMap<String, Integer> view = new LinkedHashMap<>();
+        for (int index = 0; index < values.length; index++) {
+            view.put(CodonIndex.trinucleotide(index), values[index]);
+        }
+        return Collections.unmodifiableMap(view);
     }
 
-    public void setDinuStatPhase1(LinkedHashMap<String, Integer> dinuStatPhase1) {
-        this.dinuStatPhase1 = dinuStatPhase1;
+    private static Map<String, Double> trinucleotideView(double[] values) {
+        LinkedHashMap<String, Double> view = new LinkedHashMap<>();
+        for (int index = 0; index < values.length; index++) {
+            view.put(CodonIndex.trinucleotide(index), values[index]);
+        }
+        return Collections.unmodifiableMap(view);
     }
 
-    public LinkedHashMap<String, Double> getDinuProbaPhase1() {
-        return dinuProbaPhase1;
+    private static Map<String, Long> dinucleotideView(long[] values) {
+        LinkedHashMap<String, Long> view = new LinkedHashMap<>();
+        for (int index = 0; index < values.length; index++) {
+            view.put(CodonIndex.dinucleotide(index), values[index]);
+        }
+        return Collections.unmodifiableMap(view);
     }
 
-    public void setDinuProbaPhase1(LinkedHashMap<String, Double> dinuProbaPhase1) {
-        this.dinuProbaPhase1 = dinuProbaPhase1;
+    private static Map<String, Double> dinucleotideView(double[] values) {
+        LinkedHashMap<String, Double> view = new LinkedHashMap<>();
+        for (int index = 0; index < values.length; index++) {
+            view.put(CodonIndex.dinucleotide(index), values[index]);
+        }
+        return Collections.unmodifiableMap(view);
     }
 
     public long getTotalCds() {
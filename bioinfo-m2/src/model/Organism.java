@@ -2,6 +2,7 @@ package model;
 
 import java.util.Date;
 import java.util.List;
+import java.util.Objects;
 
 import service.interfaces.Tuple;
 
@@ -40,14 +41,19 @@ public class Organism {
     public boolean equals(Object obj) {
         if (obj instanceof Organism) {
             Organism orga = (Organism)obj;
-            return (orga.name.equals(this.name)
-                    && orga.group.equals(this.group)
-                    && orga.subGroup.equals(this.subGroup));
+            return (Objects.equals(orga.name, this.name)
+                    && Objects.equals(orga.group, this.group)
+                    && Objects.equals(orga.subGroup, this.subGroup));
         } else {
             return false;
         }
     }
 
+    @Override
+    public int hashCode() {
+        return Objects.hash(name, group, subGroup);
+    }
+
     public Kingdom getKingdom() {
         return kingdom;
     }
@@ -0,0 +1,23 @@
+package service.exception;
+
+import java.io.IOException;
+
+/**
+ * Response with a non successful status. Client errors other than 429 are not worth retrying.
+ */
+public class HttpStatusException extends IOException {
+    private final int statusCode;
+
+    public HttpStatusException(int statusCode, String message) {
+        super(message);
+        this.statusCode = statusCode;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    public boolean isRetryable() {
+        return statusCode == 429 || statusCode >= 500;
+    }
+}
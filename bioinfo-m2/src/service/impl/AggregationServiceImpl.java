@@ -0,0 +1,215 @@
+package service.impl;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.inject.Inject;
+
+import model.Gene;
+import model.Kingdom;
+import model.NucleotidesHolder;
+import model.Organism;
+import service.interfaces.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Aggregation tree of the results, keyed by the directories under the data directory (kingdom/group/subgroup).
+ * The sums of the organisms are accumulated in the node of their directory as soon as they are processed, and
+ * the Total_* files are computed from the tree by a fork-join reduction: sibling directories are summed in
+ * parallel and merged with {@link NucleotidesHolder#addCounts}, the writes of the Total_* files run on the executor.
+ * Directories without any organism processed in this run reuse their previous Total_* results store, and the
+ * organisms of previous runs are read from their results store, so no workbook is read unless it predates the
+ * results store.
+ */
+public class AggregationServiceImpl implements IAggregationService {
+    private static final String TOTAL_PREFIX = "Total_";
+
+    private final IResultStoreService resultStoreService;
+    private final IFileService fileService;
+    private final IOrganismService organismService;
+    private final IGeneService geneService;
+    private final IConfigService configService;
+    private final Node root = new Node();
+    private final ForkJoinPool forkJoinPool = new ForkJoinPool();
+
+    /**
+     * A directory of the results tree. Only the directories holding organisms have sums.
+     */
+    private static class Node {
+        final ConcurrentHashMap<String, Node> children = new ConcurrentHashMap<>();
+        final Map<String, Gene> sums = new HashMap<>();
+        final Set<String> organisms = new HashSet<>();
+    }
+
+    @Inject
+    public AggregationServiceImpl(IResultStoreService resultStoreService, IFileService fileService, IOrganismService organismService, IGeneService geneService, IConfigService configService) {
+        this.resultStoreService = resultStoreService;
+        this.fileService = fileService;
+        this.organismService = organismService;
+        this.geneService = geneService;
+        this.configService = configService;
+    }
+
+    @Override
+    public void addOrganism(Organism organism, Map<String, ? extends NucleotidesHolder> organismSums) {
+        Path relativePath = getDataDirectory().relativize(Paths.get(organism.getPath()).toAbsolutePath().normalize());
+        Node node = root;
+        for (Path segment : relativePath) {
+            node = node.children.computeIfAbsent(segment.toString(), name -> new Node());
+        }
+        synchronized (node) {
+            for (Map.Entry<String, ? extends NucleotidesHolder> sum : organismSums.entrySet()) {
+                addRecord(node.sums, sum.getKey(), sum.getValue());
+            }
+            node.organisms.add(new File(fileService.getResultFilePath(organism.getPath(), organism.getName(), "")).getName());
+        }
+    }
+
+    @Override
+    public void createTotals(Kingdom kingdom) {
+        Node node = root.children.remove(kingdom.getLabel());
+        File directory = getDataDirectory().resolve(kingdom.getLabel()).toFile();
+        if (!directory.isDirectory()) {
+            return;
+        }
+        Queue<ListenableFuture<Organism>> writes = new ConcurrentLinkedQueue<>();
+        try {
+            forkJoinPool.invoke(new AggregateTask(kingdom, directory, node, writes));
+            Futures.allAsList(writes).get();
+        } catch (InterruptedException | ExecutionException | UncheckedIOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private Path getDataDirectory() {
+        return Paths.get(configService.getProperty("dataDir")).toAbsolutePath().normalize();
+    }
+
+    /**
+     * Returns the sums of a directory and starts the writing of its Total_* files when they changed.
+     */
+    private class AggregateTask extends RecursiveTask<Map<String, Gene>> {
+        private static final long serialVersionUID = 1L;
+
+        private final Kingdom kingdom;
+        private final File directory;
+        private final Node node;
+        private final Queue<ListenableFuture<Organism>> writes;
+
+        AggregateTask(Kingdom kingdom, File directory, Node node, Queue<ListenableFuture<Organism>> writes) {
+            this.kingdom = kingdom;
+            this.directory = directory;
+            this.node = node;
+            this.writes = writes;
+        }
+
+        @Override
+        protected Map<String, Gene> compute() {
+            try {
+                return aggregate();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private Map<String, Gene> aggregate() throws IOException {
+            File totalStore = resultStoreService.getStoreFile(directory.getParent(), TOTAL_PREFIX + directory.getName());
+            Map<String, Gene> totals = new HashMap<>();
+            if (node == null && totalStore.isFile()) {
+                // Nothing processed below this directory in this run
+                for (Gene record : resultStoreService.read(totalStore)) {
+                    addRecord(totals, record.getType(), record);
+                }
+                return totals;
+            }
+
+            File[] subdirectories = directory.listFiles(File::isDirectory);
+            if (subdirectories == null || subdirectories.length == 0) {
+                Set<String> processed = Collections.emptySet();
+                if (node != null) {
+                    synchronized (node) {
+                        for (Gene sum : node.sums.values()) {
+                            addRecord(totals, sum.getType(), sum);
+                        }
+                        processed = new HashSet<>(node.organisms);
+                    }
+                }
+                addPreviousOrganisms(totals, directory, processed);
+            } else {
+                List<AggregateTask> subtasks = new ArrayList<>();
+                for (File subdirectory : subdirectories) {
+                    Node child = node == null ? null : node.children.get(subdirectory.getName());
+                    subtasks.add(new AggregateTask(kingdom, subdirectory, child, writes));
+                }
+                for (AggregateTask subtask : invokeAll(subtasks)) {
+                    for (Gene sum : subtask.join().values()) {
+                        addRecord(totals, sum.getType(), sum);
+                    }
+                }
+            }
+
+            Organism total = organismService.createOrganism(TOTAL_PREFIX + directory.getName(), "", "", "", new Date(), new ArrayList<>(), kingdom.getId());
+            total.setPath(directory.getParent());
+            writes.add(organismService.processOrganismWithoutGene(totals, kingdom, total));
+            return totals;
+        }
+    }
+
+    /**
+     * Adds the organisms of the directory which were not processed in this run, from their results store or,
+     * for results written before the results store existed, from their workbook.
+     */
+    private void addPreviousOrganisms(Map<String, Gene> totals, File directory, Set<String> processed) throws IOException {
+        File[] files = directory.listFiles(File::isFile);
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            String name = file.getName();
+            int extension = name.lastIndexOf('.');
+            String baseName = extension > 0 ? name.substring(0, extension) : name;
+            if (processed.contains(baseName)) {
+                continue;
+            }
+            if (resultStoreService.isStoreFile(file)) {
+                for (Gene record : resultStoreService.read(file)) {
+                    addRecord(totals, record.getType(), record);
+                }
+            } else if (name.endsWith(".xlsx") && !resultStoreService.getStoreFile(directory.getPath(), baseName).isFile()) {
+                Map<String, Gene> sums = fileService.readWorkbooks(new HashMap<>(), file, 1);
+                for (Gene sum : sums.values()) {
+                    addRecord(totals, sum.getType(), sum);
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds the counts to the sum of the type, keyed like the "Sum_{type}" sheets of the workbooks.
+     */
+    private void addRecord(Map<String, Gene> sums, String recordType, NucleotidesHolder record) {
+        String type = recordType == null ? "" : recordType;
+        if (type.toLowerCase().equals("unknown")) {
+            type = "DNA";
+        } else {
+            String[] split = ("Sum_" + type).split("_");
+            type = split.length > 1 ? split[1] : "";
+        }
+        Gene sum = sums.get(type);
+        if (sum == null) {
+            sum = geneService.createGene("Sum_", type, "", 0, 0);
+            sums.put(type, sum);
+        }
+        sum.addCounts(record);
+    }
+}
@@ -0,0 +1,131 @@
+package service.impl;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.inject.Inject;
+import com.google.inject.name.Named;
+
+import service.interfaces.IBatchFetchService;
+import service.interfaces.IConfigService;
+import service.interfaces.IHttpService;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.*;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects the requested accessions for a short window (or until a batch is full), fetches them with a single
+ * efetch request, and splits the response back into one file per replicon.
+ * Each replicon is handed over as soon as its section of the response is complete.
+ */
+public class BatchFetchServiceImpl implements IBatchFetchService {
+    private static final String EFETCH_URL = "https://eutils.ncbi.nlm.nih.gov/entrez/eutils/efetch.fcgi?db=nuccore&rettype=fasta_cds_na&retmode=text&id=";
+
+    private final IHttpService httpService;
+    private final ListeningExecutorService executorService;
+    private final ScheduledExecutorService scheduler;
+    private final int batchSize;
+    private final long batchWindowMillis;
+
+    // Requests of the current window, by accession
+    private Map<String, List<SettableFuture<InputStream>>> pending = new LinkedHashMap<>();
+    private ScheduledFuture<?> flushTask;
+
+    @Inject
+    public BatchFetchServiceImpl(IHttpService httpService, @Named("NetworkStage") ListeningExecutorService listeningExecutorService, @Named("BatchScheduler") ScheduledExecutorService scheduler, IConfigService configService) {
+        this.httpService = httpService;
+        this.executorService = listeningExecutorService;
+        this.scheduler = scheduler;
+        this.batchSize = Integer.parseInt(configService.getProperty("fetchBatchSize"));
+        this.batchWindowMillis = Long.parseLong(configService.getProperty("fetchBatchWindow"));
+    }
+
+    @Override
+    public ListenableFuture<InputStream> fetch(String accession) {
+        SettableFuture<InputStream> future = SettableFuture.create();
+        Map<String, List<SettableFuture<InputStream>>> batch = null;
+        synchronized (this) {
+            pending.computeIfAbsent(accession, a -> new ArrayList<>()).add(future);
+            if (pending.size() >= batchSize) {
+                batch = takePending();
+            } else if (flushTask == null) {
+                flushTask = scheduler.schedule(this::flush, batchWindowMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+        if (batch != null) {
+            send(batch);
+        }
+        return future;
+    }
+
+    private void flush() {
+        Map<String, List<SettableFuture<InputStream>>> batch;
+        synchronized (this) {
+            batch = takePending();
+        }
+        if (!batch.isEmpty()) {
+            send(batch);
+        }
+    }
+
+    private synchronized Map<String, List<SettableFuture<InputStream>>> takePending() {
+        Map<String, List<SettableFuture<InputStream>>> batch = pending;
+        pending = new LinkedHashMap<>();
+        if (flushTask != null) {
+            flushTask.cancel(false);
+            flushTask = null;
+        }
+        return batch;
+    }
+
+    private void send(Map<String, List<SettableFuture<InputStream>>> batch) {
+        String url = EFETCH_URL + String.join(",", batch.keySet());
+        ListenableFuture<Void> demultiplexFuture = Futures.transformAsync(httpService.get(url), httpResult -> {
+            try (InputStream content = httpResult.getContent()) {
+                new FastaDemultiplexer((accession, section) -> complete(batch, accession, section)).demultiplex(content);
+            }
+            return Futures.immediateFuture(null);
+        }, executorService);
+
+        Futures.addCallback(demultiplexFuture, new FutureCallback<Void>() {
+            @Override
+            public void onSuccess(Void result) {
+                failRemaining(batch, new IOException("No CDS in the batch response"));
+            }
+
+            @Override
+            public void onFailure(Throwable throwable) {
+                failRemaining(batch, throwable);
+            }
+        }, executorService);
+    }
+
+    private static void complete(Map<String, List<SettableFuture<InputStream>>> batch, String accession, byte[] section) {
+        List<SettableFuture<InputStream>> futures = batch.get(accession);
+        if (futures == null) {
+            // The response gives versioned accessions
+            int version = accession.lastIndexOf('.');
+            futures = version > 0 ? batch.get(accession.substring(0, version)) : null;
+        }
+        if (futures != null) {
+            for (SettableFuture<InputStream> future : futures) {
+                future.set(new ByteArrayInputStream(section));
+            }
+        }
+    }
+
+    private static void failRemaining(Map<String, List<SettableFuture<InputStream>>> batch, Throwable throwable) {
+        for (List<SettableFuture<InputStream>> futures : batch.values()) {
+            for (SettableFuture<InputStream> future : futures) {
+                future.setException(throwable);
+            }
+        }
+    }
+}
@@ -0,0 +1,295 @@
+package service.impl;
+
+import model.CodingSequence;
+import model.CodonIndex;
+import service.interfaces.CdsConsumer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Streaming FASTA-CDS tokenizer working directly on bytes.
+ * Bytes are pushed with {@link #feed(byte[], int, int)}, headers are validated as they end and each sequence is
+ * validated (init/stop codons, length, ACGT alphabet) while it is buffered, then handed to the consumer.
+ * Only the current header and the current CDS are kept in memory, so the footprint depends on the longest CDS
+ * and not on the size of the replicon.
+ */
+final class CdsScanner {
+    private static final byte HEADER_START = (byte) CodingSequence.START_CDS_INFO.charAt(0);
+    private static final byte[] LOCATION = "[location=".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] JOIN = "join(".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] COMPLEMENT = "complement(".getBytes(StandardCharsets.US_ASCII);
+
+    // Only used for the headers the byte parser does not understand, so that the result stays the same as the regex
+    private static final Pattern COMPLETE_PATTERN = Pattern.compile(CodingSequence.REGEX_COMPLETE);
+    private static final Pattern LOCATOR_PATTERN = Pattern.compile(CodingSequence.REGEX_LOCATOR);
+
+    private static final boolean[] INIT_CODONS = new boolean[CodonIndex.TRINUCLEOTIDE_COUNT];
+    private static final boolean[] STOP_CODONS = new boolean[CodonIndex.TRINUCLEOTIDE_COUNT];
+
+    private static final int SKIP = 0;
+    private static final int HEADER = 1;
+    private static final int SEQUENCE = 2;
+
+    static {
+        for (CodingSequence.InitCodon codon : CodingSequence.InitCodon.values()) {
+            INIT_CODONS[CodonIndex.trinucleotide(codon.name(), 0)] = true;
+        }
+        for (CodingSequence.StopCodon codon : CodingSequence.StopCodon.values()) {
+            STOP_CODONS[CodonIndex.trinucleotide(codon.name(), 0)] = true;
+        }
+    }
+
+    private final CdsConsumer consumer;
+    private final List<OutputStream> copies;
+
+    private byte[] header = new byte[512];
+    private int headerLength = 0;
+    private byte[] sequence = new byte[8192];
+    private int sequenceLength = 0;
+    private boolean sequenceAlphabetValid = true;
+
+    private int state = SKIP;
+    private boolean lineStart = true;
+    private boolean empty = true;
+    private boolean locatorsValid;
+
+    private long totalCds = 0;
+    private long unprocessedCds = 0;
+
+    /**
+     * @param consumer receives the valid sequences
+     * @param copies   streams receiving a raw copy of everything fed to the scanner (gene/genome text files)
+     */
+    CdsScanner(CdsConsumer consumer, List<OutputStream> copies) {
+        this.consumer = consumer;
+        this.copies = copies;
+    }
+
+    /**
+     * Reads the whole stream through the scanner, then calls {@link #finish()}.
+     * The stream is not closed.
+     */
+    void scan(InputStream inputStream) throws IOException {
+        byte[] buffer = new byte[65536];
+        int read;
+        while ((read = inputStream.read(buffer)) != -1) {
+            feed(buffer, 0, read);
+        }
+        finish();
+    }
+
+    void feed(byte[] buffer, int offset, int length) throws IOException {
+        for (OutputStream copy : copies) {
+            copy.write(buffer, offset, length);
+        }
+
+        int end = offset + length;
+        for (int i = offset; i < end; i++) {
+            byte b = buffer[i];
+            if (b == '\n' || b == '\r') {
+                if (state == HEADER) {
+                    endHeader();
+                }
+                lineStart = true;
+                continue;
+            }
+            empty = false;
+            if (lineStart && b == HEADER_START) {
+                if (state == SEQUENCE) {
+                    endSequence();
+                }
+                state = HEADER;
+                headerLength = 0;
+                lineStart = false;
+                continue;
+            }
+            lineStart = false;
+
+            if (state == SEQUENCE) {
+                if (sequenceLength == sequence.length) {
+                    sequence = Arrays.copyOf(sequence, sequence.length * 2);
+                }
+                sequence[sequenceLength++] = b;
+                if (CodonIndex.code(b) == CodonIndex.INVALID) {
+                    sequenceAlphabetValid = false;
+                }
+            } else if (state == HEADER) {
+                if (headerLength == header.length) {
+                    header = Arrays.copyOf(header, header.length * 2);
+                }
+                header[headerLength++] = b;
+            }
+        }
+    }
+
+    /**
+     * Flushes the last header or sequence once the input is exhausted.
+     */
+    void finish() {
+        if (state == HEADER) {
+            endHeader();
+        }
+        if (state == SEQUENCE) {
+            endSequence();
+        }
+        state = SKIP;
+        lineStart = true;
+    }
+
+    boolean isEmpty() {
+        return empty;
+    }
+
+    long getTotalCds() {
+        return totalCds;
+    }
+
+    long getUnprocessedCds() {
+        return unprocessedCds;
+    }
+
+    private void endHeader() {
+        if (checkHeader()) {
+            state = SEQUENCE;
+            sequenceLength = 0;
+            sequenceAlphabetValid = true;
+        } else {
+            state = SKIP;
+        }
+    }
+
+    private void endSequence() {
+        totalCds++;
+        if (checkSequence()) {
+            consumer.accept(sequence, sequenceLength);
+        } else {
+            unprocessedCds++;
+        }
+        state = SKIP;
+    }
+
+    private boolean checkSequence() {
+        return sequenceLength > 0
+                && sequenceAlphabetValid
+                && sequenceLength % 3 == 0
+                && INIT_CODONS[CodonIndex.trinucleotide(sequence, 0)]
+                && STOP_CODONS[CodonIndex.trinucleotide(sequence, sequenceLength - 3)];
+    }
+
+    /**
+     * Same result as matching {@link CodingSequence#REGEX_COMPLETE} and checking every locator of the match.
+     */
+    private boolean checkHeader() {
+        int from = indexOf(LOCATION, 0);
+        if (from < 0) {
+            return false;
+        }
+        locatorsValid = true;
+        int position = parseLocation(from + LOCATION.length);
+        if (position >= 0 && position < headerLength && header[position] == ']') {
+            return locatorsValid;
+        }
+        return checkHeaderWithRegex();
+    }
+
+    private boolean checkHeaderWithRegex() {
+        Matcher m = COMPLETE_PATTERN.matcher(new String(header, 0, headerLength, StandardCharsets.ISO_8859_1));
+        if (!m.find()) {
+            return false;
+        }
+        m = LOCATOR_PATTERN.matcher(m.group());
+        boolean locatorsOk = true;
+        while (m.find() && locatorsOk) {
+            locatorsOk = checkLocator(m.group());
+        }
+        return locatorsOk;
+    }
+
+    private static boolean checkLocator(String locator) {
+        String[] indexes = locator.split("\\.\\.");
+        try {
+            return indexes.length == 2 && Long.parseLong(indexes[0]) < Long.parseLong(indexes[1]);
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Parses {@code locator | join | complement(locator | join)} and returns the position after it, or -1.
+     */
+    private int parseLocation(int position) {
+        if (startsWith(COMPLEMENT, position)) {
+            int end = startsWith(JOIN, position + COMPLEMENT.length)
+                    ? parseJoin(position + COMPLEMENT.length)
+                    : parseLocator(position + COMPLEMENT.length);
+            return (end >= 0 && end < headerLength && header[end] == ')') ? end + 1 : -1;
+        }
+        if (startsWith(JOIN, position)) {
+            return parseJoin(position);
+        }
+        return parseLocator(position);
+    }
+
+    private int parseJoin(int position) {
+        int end = parseLocator(position + JOIN.length);
+        while (end >= 0 && end < headerLength && header[end] == ',') {
+            end = parseLocator(end + 1);
+        }
+        return (end >= 0 && end < headerLength && header[end] == ')') ? end + 1 : -1;
+    }
+
+    /**
+     * Parses {@code start..end}, records whether start is before end, and returns the position after it, or -1.
+     */
+    private int parseLocator(int position) {
+        long start = 0;
+        int i = position;
+        while (i < headerLength && header[i] >= '0' && header[i] <= '9' && start < Integer.MAX_VALUE) {
+            start = start * 10 + (header[i++] - '0');
+        }
+        if (i == position || i + 2 > headerLength || header[i] != '.' || header[i + 1] != '.') {
+            return -1;
+        }
+        i += 2;
+        int endStart = i;
+        long end = 0;
+        while (i < headerLength && header[i] >= '0' && header[i] <= '9' && end < Integer.MAX_VALUE) {
+            end = end * 10 + (header[i++] - '0');
+        }
+        if (i == endStart || start > Integer.MAX_VALUE || end > Integer.MAX_VALUE) {
+            return -1;
+        }
+        if (start >= end) {
+            locatorsValid = false;
+        }
+        return i;
+    }
+
+    private boolean startsWith(byte[] prefix, int position) {
+        if (position + prefix.length > headerLength) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (header[position + i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int indexOf(byte[] needle, int from) {
+        for (int i = from; i + needle.length <= headerLength; i++) {
+            if (startsWith(needle, i)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,109 @@
+package service.impl;
+
+import model.CodonIndex;
+import model.NucleotidesHolder;
+
+import java.util.Arrays;
+
+/**
+ * Counting kernel for one coding sequence.
+ * A single pass over the bytes updates the dinucleotide phases 0/1, the trinucleotide phases 0/1/2 and the
+ * per-CDS phase preference of every trinucleotide, with the same bounds as the former per-phase loops.
+ */
+public final class CodonCounter {
+    private static final int TRINUCLEOTIDES = CodonIndex.TRINUCLEOTIDE_COUNT;
+
+    // Trinucleotide counts of the current CDS, phase by phase, reused by each thread
+    private static final ThreadLocal<int[]> SCRATCH = ThreadLocal.withInitial(() -> new int[3 * TRINUCLEOTIDES]);
+
+    private CodonCounter() {
+    }
+
+    /**
+     * Adds the counts of the given sequence to the holder.
+     * The sequence must already be validated (ACGT only, see {@link CdsScanner}).
+     */
+    public static void count(final byte[] sequence, final int length, final NucleotidesHolder holder) {
+        int[] scratch = SCRATCH.get();
+        Arrays.fill(scratch, 0);
+
+        long[] dinuStat0 = holder.getDinuStat(0);
+        long[] dinuStat1 = holder.getDinuStat(1);
+
+        // A trinucleotide row starts at i = 0, 3, 6... while i < length - 3
+        int trinuLimit = length - 3;
+        // A dinucleotide row starts at i = 0, 2, 4... while i < length - (3 + length % 2) + 1
+        int dinuLimit = length - (3 + length % 2) + 1;
+
+        int code = 0;
+        int trinuPhase = 0;
+        int trinuRow = 0;
+        for (int p = 0; p < length; p++) {
+            code = ((code << 2) | CodonIndex.code(sequence[p])) & (TRINUCLEOTIDES - 1);
+
+            if (p >= 1) {
+                // Dinucleotide starting at p - 1
+                int start = p - 1;
+                if ((start & 1) == 0) {
+                    if (start < dinuLimit) {
+                        dinuStat0[code & (CodonIndex.DINUCLEOTIDE_COUNT - 1)]++;
+                    }
+                } else if (start - 1 < dinuLimit) {
+                    dinuStat1[code & (CodonIndex.DINUCLEOTIDE_COUNT - 1)]++;
+                }
+            }
+
+            if (p >= 2) {
+                // Trinucleotide starting at p - 2 = trinuRow + trinuPhase
+                if (trinuRow < trinuLimit) {
+                    scratch[trinuPhase * TRINUCLEOTIDES + code]++;
+                }
+                if (++trinuPhase == 3) {
+                    trinuPhase = 0;
+                    trinuRow += 3;
+                }
+            }
+        }
+
+        long[] trinuStat0 = holder.getTrinuStat(0);
+        long[] trinuStat1 = holder.getTrinuStat(1);
+        long[] trinuStat2 = holder.getTrinuStat(2);
+        int[] pref0 = holder.getTrinuPref(0);
+        int[] pref1 = holder.getTrinuPref(1);
+        int[] pref2 = holder.getTrinuPref(2);
+        int totalPref0 = 0;
+        int totalPref1 = 0;
+        int totalPref2 = 0;
+
+        for (int s = 0; s < TRINUCLEOTIDES; s++) {
+            int count0 = scratch[s];
+            int count1 = scratch[TRINUCLEOTIDES + s];
+            int count2 = scratch[2 * TRINUCLEOTIDES + s];
+
+            trinuStat0[s] += count0;
+            trinuStat1[s] += count1;
+            trinuStat2[s] += count2;
+
+            // Every phase reaching the maximum of this CDS is preferred, including when the codon is absent
+            int max = Math.max(count0, Math.max(count1, count2));
+            if (max == count0) {
+                pref0[s]++;
+                totalPref0++;
+            }
+            if (max == count1) {
+                pref1[s]++;
+                totalPref1++;
+            }
+            if (max == count2) {
+                pref2[s]++;
+                totalPref2++;
+            }
+        }
+
+        holder.setTotalPrefTrinu0(holder.getTotalPrefTrinu0() + totalPref0);
+        holder.setTotalPrefTrinu1(holder.getTotalPrefTrinu1() + totalPref1);
+        holder.setTotalPrefTrinu2(holder.getTotalPrefTrinu2() + totalPref2);
+        holder.setTotalTrinucleotide(holder.getTotalTrinucleotide() + (trinuLimit > 0 ? (trinuLimit + 2) / 3 : 0));
+        holder.setTotalDinucleotide(holder.getTotalDinucleotide() + (dinuLimit > 0 ? (dinuLimit + 1) / 2 : 0));
+    }
+}
@@ -30,6 +30,87 @@ public class ConfigServiceImpl implements IConfigService {
             case "genome":
                 property = "./Genome/";
                 break;
+            case "excelStreaming":
+                property = "true";
+                break;
+            case "excelOutput":
+                property = "true";
+                break;
+            case "cache":
+                property = "./Cache/";
+                break;
+            case "cacheMaxSize":
+                property = "2147483648";
+                break;
+            case "localFasta":
+                property = "";
+                break;
+            case "reports":
+                property = "./Reports/";
+                break;
+            case "plasmidStore":
+                property = "./Cache/plasmids.store";
+                break;
+            case "plasmidCacheSize":
+                property = "1000";
+                break;
+            case "httpInitialRate":
+                property = "2";
+                break;
+            case "httpMinRate":
+                property = "0.5";
+                break;
+            case "httpMaxRate":
+                property = "50";
+                break;
+            case "hedgeRequests":
+                property = "false";
+                break;
+            case "hedgePercentile":
+                property = "0.95";
+                break;
+            case "hedgeBudget":
+                property = "0.05";
+                break;
+            case "hedgeBaseUrl":
+                property = "";
+                break;
+            case "fetchBatchSize":
+                property = "1";
+                break;
+            case "fetchBatchWindow":
+                property = "200";
+                break;
+            case "repliconMemoSize":
+                property = "2000";
+                break;
+            case "organismWindow":
+                property = "50";
+                break;
+            case "repliconWindow":
+                property = "100";
+                break;
+            case "executionMode":
+                property = "platform";
+                break;
+            case "networkThreads":
+                property = "12";
+                break;
+            case "networkQueue":
+                property = "256";
+                break;
+            case "parseThreads":
+                property = "0";
+                break;
+            case "parseQueue":
+                property = "64";
+                break;
+            case "writeThreads":
+                property = "2";
+                break;
+            case "writeQueue":
+                property = "64";
+                break;
             default:
                 property = null;
                 break;
@@ -0,0 +1,101 @@
+package service.impl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Splits a FASTA-CDS file holding several replicons into one section per replicon.
+ * The replicon of a CDS is read from its header ({@code >lcl|NC_000913.3_cds_...}); the CDS of a replicon are
+ * consecutive, so a section is handed to the consumer as soon as the next replicon starts.
+ */
+final class FastaDemultiplexer {
+    private static final String LOCAL_PREFIX = "lcl|";
+    private static final String CDS_SEPARATOR = "_cds_";
+
+    interface SectionConsumer {
+        void accept(String accession, byte[] section);
+    }
+
+    private final SectionConsumer consumer;
+    private final ByteArrayOutputStream section = new ByteArrayOutputStream(1 << 20);
+    private final ByteArrayOutputStream header = new ByteArrayOutputStream(512);
+    private String accession;
+    private boolean lineStart = true;
+    private boolean inHeader = false;
+
+    FastaDemultiplexer(SectionConsumer consumer) {
+        this.consumer = consumer;
+    }
+
+    void demultiplex(InputStream inputStream) throws IOException {
+        byte[] buffer = new byte[65536];
+        int read;
+        while ((read = inputStream.read(buffer)) != -1) {
+            feed(buffer, 0, read);
+        }
+        finish();
+    }
+
+    void feed(byte[] buffer, int offset, int length) {
+        int end = offset + length;
+        int copyFrom = offset;
+        for (int i = offset; i < end; i++) {
+            byte b = buffer[i];
+            if (inHeader) {
+                if (b == '\n') {
+                    header.write(buffer, copyFrom, i + 1 - copyFrom);
+                    copyFrom = i + 1;
+                    endHeader();
+                }
+            } else if (lineStart && b == '>') {
+                section.write(buffer, copyFrom, i - copyFrom);
+                copyFrom = i;
+                inHeader = true;
+                header.reset();
+            }
+            lineStart = b == '\n';
+        }
+        (inHeader ? header : section).write(buffer, copyFrom, end - copyFrom);
+    }
+
+    void finish() {
+        if (inHeader) {
+            endHeader();
+        }
+        emit();
+    }
+
+    private void endHeader() {
+        inHeader = false;
+        byte[] headerBytes = header.toByteArray();
+        String headerAccession = parseAccession(new String(headerBytes, StandardCharsets.ISO_8859_1));
+        if (!headerAccession.equals(accession)) {
+            emit();
+            accession = headerAccession;
+        }
+        section.write(headerBytes, 0, headerBytes.length);
+        header.reset();
+    }
+
+    private void emit() {
+        if (accession != null && section.size() > 0) {
+            consumer.accept(accession, section.toByteArray());
+        }
+        section.reset();
+    }
+
+    static String parseAccession(String headerLine) {
+        String id = headerLine.substring(1).trim();
+        int space = id.indexOf(' ');
+        if (space >= 0) {
+            id = id.substring(0, space);
+        }
+        if (id.startsWith(LOCAL_PREFIX)) {
+            id = id.substring(LOCAL_PREFIX.length());
+        }
+        int cds = id.indexOf(CDS_SEPARATOR);
+        return cds >= 0 ? id.substring(0, cds) : id;
+    }
+}
@@ -5,16 +5,18 @@ import com.google.common.util.concurrent.ListeningExecutorService;
 import com.google.inject.Inject;
 
 import model.*;
+import service.interfaces.IConfigService;
 import service.interfaces.IFileService;
 import service.interfaces.IGeneService;
 import service.interfaces.IOrganismService;
 
 import org.apache.poi.ss.usermodel.*;
+import org.apache.poi.xssf.streaming.SXSSFSheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 import org.apache.poi.xssf.usermodel.XSSFCell;
 import org.apache.poi.xssf.usermodel.XSSFRow;
 import org.apache.poi.xssf.usermodel.XSSFSheet;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
-import org.json.simple.JSONObject;
 import org.json.simple.JSONValue;
 
 import javax.swing.tree.DefaultMutableTreeNode;
@@ -33,15 +35,44 @@ public class FileServiceImpl implements IFileService {
     private final short SECONDARY_COLOR = IndexedColors.LIGHT_GREEN.getIndex();
     private final short PRIMARY_INFO_COLOR = IndexedColors.AQUA.getIndex();
     private final short SECONDARY_INFO_COLOR = IndexedColors.CORAL.getIndex();
+
+    // Rows of a sheet: trinucleotides (0..66), then dinucleotides (67..87). The streaming window holds one whole sheet
+    private static final int SHEET_ROWS = CodonIndex.TRINUCLEOTIDE_COUNT + CodonIndex.DINUCLEOTIDE_COUNT + 8;
+
+    // Column widths in 1/256th of a character, replacing autoSizeColumn
+    private static final int NUCLEOTIDE_COLUMN_WIDTH = 8 * 256;
+    private static final int VALUE_COLUMN_WIDTH = 14 * 256;
+    private static final int INFO_LABEL_COLUMN_WIDTH = 24 * 256;
+    private static final int MAX_COLUMN_WIDTH = 255 * 256;
+
     private final IGeneService geneService;
     private final ListeningExecutorService executorService;
     private final IOrganismService organismService;
+    private final boolean streaming;
+    private final Map<Workbook, CellStyles> workbookStyles = Collections.synchronizedMap(new WeakHashMap<>());
+
+    /**
+     * Cell styles of a workbook, created once and shared by all its sheets.
+     */
+    private static final class CellStyles {
+        CellStyle normal;
+        CellStyle primary;
+        CellStyle normalNumber;
+        CellStyle normalProba;
+        CellStyle primaryNumber;
+        CellStyle primaryProba;
+        CellStyle secondaryNumber;
+        CellStyle infoPrimary;
+        CellStyle infoSecondary;
+        CellStyle infoSecondaryNumber;
+    }
 
     @Inject
-    public FileServiceImpl(IGeneService geneService, ListeningExecutorService listeningExecutorService, IOrganismService organismService) {
+    public FileServiceImpl(IGeneService geneService, ListeningExecutorService listeningExecutorService, IOrganismService organismService, IConfigService configService) {
     	this.geneService=geneService;
         this.executorService = listeningExecutorService;
         this.organismService = organismService;
+        this.streaming = Boolean.parseBoolean(configService.getProperty("excelStreaming"));
     }
 
     private DefaultMutableTreeNode buildTreeRoot(DefaultMutableTreeNode root, File file) {
@@ -77,27 +108,35 @@ public class FileServiceImpl implements IFileService {
     }
 
     @Override
-    public XSSFWorkbook createWorkbook() {
+    public Workbook createWorkbook() {
+        if (streaming) {
+            return new SXSSFWorkbook(SHEET_ROWS);
+        }
         return new XSSFWorkbook();
     }
 
     @Override
-    public XSSFSheet fillWorkbook(Organism organism, Gene gene, final XSSFWorkbook workbook) {
+    public Sheet fillWorkbook(Organism organism, Gene gene, final Workbook workbook) {
         String sheetName;
         if (!gene.getType().equals("") && !gene.getType().toLowerCase().equals("unknown")) {
             sheetName = gene.getType().substring(0, 1).toUpperCase() + gene.getType().substring(1).toLowerCase() + "_" + gene.getName();
         } else {
             sheetName = "DNA_" + gene.getName();
         }
-        XSSFSheet sheet = workbook.createSheet(sheetName);
-        sheet = fillFileDinu(gene, workbook, sheet);
-        sheet = fillFileTrinu(gene, workbook, sheet);
+        Sheet sheet = workbook.createSheet(sheetName);
+        CellStyles styles = getStyles(workbook);
+        setColumnWidths(sheet);
+        // Rows are written in ascending order so that the sheet can be flushed as soon as it is complete
+        sheet = fillFileTrinu(gene, styles, sheet);
+        sheet = fillFileDinu(gene, styles, sheet);
         sheet = fillFileInfo(organism, gene, sheet);
+        flushSheet(sheet);
         return sheet;
     }
 
     @Override
-    public XSSFWorkbook fillWorkbookSum(Organism organism, HashMap<String, Sum> organismSums, final XSSFWorkbook workbook) {
+    public Workbook fillWorkbookSum(Organism organism, HashMap<String, Sum> organismSums, final Workbook workbook) {
+        CellStyles styles = getStyles(workbook);
         for (Map.Entry<String, Sum> sum: organismSums.entrySet()) {
             String sheetName;
             if (!sum.getKey().toLowerCase().equals("unknown")) {
@@ -106,21 +145,34 @@ public class FileServiceImpl implements IFileService {
                 sheetName = "Sum_DNA";
             }
 
-            XSSFSheet sheet = workbook.createSheet(sheetName);
-            fillInfos(organism, sum.getValue(), workbook, sheet);
-            fillFileTrinu(sum.getValue(), workbook, sheet);
-            fillFileDinu(sum.getValue(), workbook, sheet);
+            Sheet sheet = workbook.createSheet(sheetName);
+            setColumnWidths(sheet);
+            fillFileTrinu(sum.getValue(), styles, sheet);
+            fillInfos(organism, sum.getValue(), styles, sheet);
+            fillFileDinu(sum.getValue(), styles, sheet);
+            flushSheet(sheet);
         }
         return workbook;
     }
 
     @Override
-    public void writeWorkbook(XSSFWorkbook workbook, final String path, final String fileName) throws IOException {
-        String filePath = Paths.get(path, sanitizeFileName(fileName) + ".xlsx").toString();
-        FileOutputStream stream = new FileOutputStream(filePath);
-        workbook.write(stream);
-        stream.close();
-        workbook.close();
+    public void writeWorkbook(Workbook workbook, final String path, final String fileName) throws IOException {
+        String filePath = getResultFilePath(path, fileName, ".xlsx");
+        try (FileOutputStream stream = new FileOutputStream(filePath)) {
+            workbook.write(stream);
+        } finally {
+            workbookStyles.remove(workbook);
+            if (workbook instanceof SXSSFWorkbook) {
+                // Deletes the temporary files holding the flushed rows
+                ((SXSSFWorkbook) workbook).dispose();
+            }
+            workbook.close();
+        }
+    }
+
+    @Override
+    public String getResultFilePath(final String path, final String fileName, final String extension) {
+        return Paths.get(path, sanitizeFileName(fileName) + extension).toString();
     }
 
     private File createUpdateFile(Kingdom kingdom) throws IOException {
@@ -168,54 +220,55 @@ public class FileServiceImpl implements IFileService {
 					
 					gene.setTotalCds(gene.getTotalCds()+(int) workbook.getSheetAt(i).getRow(2).getCell(1).getNumericCellValue());
 					gene.setTotalUnprocessedCds((int)workbook.getSheetAt(i).getRow(3).getCell(1).getNumericCellValue());
+					long[] stat0=gene.getTrinuStat(0);
+					long[] stat1=gene.getTrinuStat(1);
+					long[] stat2=gene.getTrinuStat(2);
+					int[] pref0=gene.getTrinuPref(0);
+					int[] pref1=gene.getTrinuPref(1);
+					int[] pref2=gene.getTrinuPref(2);
 					int j = 1;
-					Set<String> keys = gene.getTrinuStatPhase0().keySet();
 					
-					for(String key: keys)
+					for(int index=0;index<CodonIndex.TRINUCLEOTIDE_COUNT;index++)
 					{
 						row=currentSheet.getRow(j);
 						tmpCell=row.getCell(1);
-						int temp=gene.getTrinuStatPhase0().get(key);
-						gene.getTrinuStatPhase0().put(key, temp+(int)tmpCell.getNumericCellValue());
+						stat0[index]+=(long)tmpCell.getNumericCellValue();
 						
 						tmpCell=row.getCell(3);
-						temp=gene.getTrinuStatPhase1().get(key);
-						gene.getTrinuStatPhase1().put(key, temp+(int)tmpCell.getNumericCellValue());
+						stat1[index]+=(long)tmpCell.getNumericCellValue();
 						
 						tmpCell=row.getCell(5);
-						temp=gene.getTrinuStatPhase2().get(key);
-						gene.getTrinuStatPhase2().put(key, temp+(int)tmpCell.getNumericCellValue());
+						stat2[index]+=(long)tmpCell.getNumericCellValue();
 						
 						tmpCell=row.getCell(7);
-						temp=gene.getTrinuPrefPhase0().get(key);
-						gene.getTrinuPrefPhase0().put(key, temp+(int)tmpCell.getNumericCellValue());
+						int temp=pref0[index];
+						pref0[index]=temp+(int)tmpCell.getNumericCellValue();
 						gene.setTotalPrefTrinu0(temp+(int)tmpCell.getNumericCellValue()+gene.getTotalPrefTrinu0());
 						
 						tmpCell=row.getCell(8);
-						temp=gene.getTrinuPrefPhase1().get(key);
-						gene.getTrinuPrefPhase1().put(key, temp+(int)tmpCell.getNumericCellValue());
+						temp=pref1[index];
+						pref1[index]=temp+(int)tmpCell.getNumericCellValue();
 						gene.setTotalPrefTrinu1(temp+(int)tmpCell.getNumericCellValue()+gene.getTotalPrefTrinu1());
 						
 						tmpCell=row.getCell(9);
-						temp=gene.getTrinuPrefPhase2().get(key);
-						gene.getTrinuPrefPhase2().put(key, temp+(int)tmpCell.getNumericCellValue());
+						temp=pref2[index];
+						pref2[index]=temp+(int)tmpCell.getNumericCellValue();
 						gene.setTotalPrefTrinu2(temp+(int)tmpCell.getNumericCellValue()+gene.getTotalPrefTrinu2());
 						
 						j++;
 					}
 					
-					keys=gene.getDinuStatPhase0().keySet();
+					long[] dinuStat0=gene.getDinuStat(0);
+					long[] dinuStat1=gene.getDinuStat(1);
 					j = 70;
-					for(String key : keys)
+					for(int index=0;index<CodonIndex.DINUCLEOTIDE_COUNT;index++)
 					{
 						row=currentSheet.getRow(j);
 						tmpCell=row.getCell(1);
-						int temp=gene.getDinuStatPhase0().get(key);
-						gene.getDinuStatPhase0().put(key, temp+(int)tmpCell.getNumericCellValue());
+						dinuStat0[index]+=(long)tmpCell.getNumericCellValue();
 						
 						tmpCell=row.getCell(3);
-						temp=gene.getDinuStatPhase1().get(key);
-						gene.getDinuStatPhase1().put(key, temp+(int)tmpCell.getNumericCellValue());
+						dinuStat1[index]+=(long)tmpCell.getNumericCellValue();
 						
 						j++;
 					}
@@ -294,21 +347,6 @@ public class FileServiceImpl implements IFileService {
         }
     }
 
-    @Override
-    public void writeUpdateFile(Kingdom kingdom, Map<String, Date> updates) throws IOException {
-        File file = createUpdateFile(kingdom);
-        FileOutputStream fileOutputStream = new FileOutputStream(file);
-        OutputStreamWriter outputStreamWriter = new OutputStreamWriter(fileOutputStream);
-        Map<String, String> json = new HashMap<>();
-        DateFormat format = organismService.getUpdateDateFormat();
-        for (Map.Entry<String, Date> entry: updates.entrySet()) {
-            json.putIfAbsent(entry.getKey(), format.format(entry.getValue()));
-        }
-        JSONObject.writeJSONString(json, outputStreamWriter);
-        outputStreamWriter.close();
-        fileOutputStream.close();
-    }
-
     //    @Override
 //    public Promise<List<File>, Throwable, Object> readDirectory(final String path) {
 //        return deferredManager.when(new DeferredCallable<List<File>, Object>() {
@@ -344,50 +382,102 @@ public class FileServiceImpl implements IFileService {
         return new File(path).mkdirs();
     }
 
-    private CellStyle buildCellStyleForProba(XSSFWorkbook workbook) {
+    private CellStyle buildCellStyleForProba(Workbook workbook) {
         CellStyle probaStyle = workbook.createCellStyle();
         probaStyle.setDataFormat(workbook.getCreationHelper().createDataFormat().getFormat("0.00"));
         return probaStyle;
     }
 
-    private CellStyle buildCellStyleForNumber(XSSFWorkbook workbook) {
+    private CellStyle buildCellStyleForNumber(Workbook workbook) {
         CellStyle numberStyle = workbook.createCellStyle();
         numberStyle.setDataFormat(workbook.getCreationHelper().createDataFormat().getFormat("0"));
         return numberStyle;
     }
 
-    private CellStyle buildCellStyleForProba(XSSFWorkbook workbook, short indexedColor) {
+    private CellStyle buildCellStyleForProba(Workbook workbook, short indexedColor) {
         CellStyle probaStyle = buildCellStyleForProba(workbook);
         probaStyle.setFillForegroundColor(indexedColor);
         probaStyle.setFillPattern(FillPatternType.SOLID_FOREGROUND);
         return probaStyle;
     }
 
-    private CellStyle buildCellStyleForNumber(XSSFWorkbook workbook, short indexedColor) {
+    private CellStyle buildCellStyleForNumber(Workbook workbook, short indexedColor) {
         CellStyle numberStyle = buildCellStyleForNumber(workbook);
         numberStyle.setFillForegroundColor(indexedColor);
         numberStyle.setFillPattern(FillPatternType.SOLID_FOREGROUND);
         return numberStyle;
     }
 
-    private CellStyle buildCellStyle(XSSFWorkbook workbook, short indexedColor) {
+    private CellStyle buildCellStyle(Workbook workbook, short indexedColor) {
         CellStyle cellStyle = workbook.createCellStyle();
         cellStyle.setFillForegroundColor(indexedColor);
         cellStyle.setFillPattern(FillPatternType.SOLID_FOREGROUND);
         return cellStyle;
     }
 
-    private <T extends NucleotidesHolder> XSSFSheet fillInfos(Organism organism, T holder, XSSFWorkbook workbook, XSSFSheet sheet) {
-        CellStyle secondaryNumberStyle = buildCellStyleForNumber(workbook, SECONDARY_COLOR);
-        CellStyle secondaryStyle = buildCellStyle(workbook, SECONDARY_COLOR);
-        CellStyle primaryStyle = buildCellStyle(workbook, PRIMARY_COLOR);
+    private CellStyles getStyles(Workbook workbook) {
+        return workbookStyles.computeIfAbsent(workbook, this::buildStyles);
+    }
 
-        secondaryNumberStyle.setAlignment(HorizontalAlignment.LEFT);
-        primaryStyle.setAlignment(HorizontalAlignment.LEFT);
-        secondaryStyle.setAlignment(HorizontalAlignment.LEFT);
+    private CellStyles buildStyles(Workbook workbook) {
+        CellStyles styles = new CellStyles();
+        styles.normal = buildCellStyle(workbook, NORMAL_COLOR);
+        styles.primary = buildCellStyle(workbook, PRIMARY_COLOR);
+        styles.normalNumber = buildCellStyleForNumber(workbook, NORMAL_COLOR);
+        styles.normalProba = buildCellStyleForProba(workbook, NORMAL_COLOR);
+        styles.primaryNumber = buildCellStyleForNumber(workbook, PRIMARY_COLOR);
+        styles.primaryProba = buildCellStyleForProba(workbook, PRIMARY_COLOR);
+        styles.secondaryNumber = buildCellStyleForNumber(workbook, SECONDARY_COLOR);
+
+        styles.normalNumber.setAlignment(HorizontalAlignment.CENTER);
+        styles.normalProba.setAlignment(HorizontalAlignment.CENTER);
+        styles.primaryNumber.setAlignment(HorizontalAlignment.CENTER);
+        styles.primaryProba.setAlignment(HorizontalAlignment.CENTER);
+        styles.secondaryNumber.setAlignment(HorizontalAlignment.CENTER);
+
+        styles.infoPrimary = buildCellStyle(workbook, PRIMARY_COLOR);
+        styles.infoSecondary = buildCellStyle(workbook, SECONDARY_COLOR);
+        styles.infoSecondaryNumber = buildCellStyleForNumber(workbook, SECONDARY_COLOR);
+
+        styles.infoPrimary.setAlignment(HorizontalAlignment.LEFT);
+        styles.infoSecondary.setAlignment(HorizontalAlignment.LEFT);
+        styles.infoSecondaryNumber.setAlignment(HorizontalAlignment.LEFT);
+        return styles;
+    }
+
+    private void setColumnWidths(Sheet sheet) {
+        sheet.setColumnWidth(0, NUCLEOTIDE_COLUMN_WIDTH);
+        for (int column = 1; column <= 9; column++) {
+            sheet.setColumnWidth(column, VALUE_COLUMN_WIDTH);
+        }
+    }
 
-        XSSFRow row;
-        XSSFCell cell;
+    private <T extends NucleotidesHolder> int infoValueColumnWidth(Organism organism, T holder) {
+        int length = Math.max(String.valueOf(organism.getName()).length(), String.valueOf(organism.getBioProject()).length());
+        length = Math.max(length, String.valueOf(holder.getTotalTrinucleotide() + holder.getTotalDinucleotide()).length());
+        return Math.min(MAX_COLUMN_WIDTH, (length + 2) * 256);
+    }
+
+    /**
+     * Writes the rows of a complete sheet to the temporary file of a streaming workbook.
+     */
+    private void flushSheet(Sheet sheet) {
+        if (sheet instanceof SXSSFSheet) {
+            try {
+                ((SXSSFSheet) sheet).flushRows();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    private <T extends NucleotidesHolder> Sheet fillInfos(Organism organism, T holder, CellStyles styles, Sheet sheet) {
+        CellStyle secondaryNumberStyle = styles.infoSecondaryNumber;
+        CellStyle secondaryStyle = styles.infoSecondary;
+        CellStyle primaryStyle = styles.infoPrimary;
+
+        Row row;
+        Cell cell;
 
         if ((row = sheet.getRow(1)) == null)
             row = sheet.createRow(1);
@@ -462,34 +552,28 @@ public class FileServiceImpl implements IFileService {
         cell.setCellValue(organism.getBioProject());
         cell.setCellStyle(secondaryStyle);
 
-        sheet.autoSizeColumn(12);
-        sheet.autoSizeColumn(13);
+        sheet.setColumnWidth(12, INFO_LABEL_COLUMN_WIDTH);
+        sheet.setColumnWidth(13, infoValueColumnWidth(organism, holder));
 
         return sheet;
     }
 
     //Not used anymore
-    private XSSFSheet fillFileInfo(Organism organism, Gene gene, XSSFSheet sheet) {
+    private Sheet fillFileInfo(Organism organism, Gene gene, Sheet sheet) {
         return sheet;
     }
 
-    private <T extends NucleotidesHolder> XSSFSheet fillFileTrinu(T g, XSSFWorkbook workbook, XSSFSheet sheet) {
-        CellStyle normalStyle = buildCellStyle(workbook, NORMAL_COLOR);
-        CellStyle primaryStyle = buildCellStyle(workbook, PRIMARY_COLOR);
-        CellStyle normalNumberStyle = buildCellStyleForNumber(workbook, NORMAL_COLOR);
-        CellStyle normalProbaStyle = buildCellStyleForProba(workbook, NORMAL_COLOR);
-        CellStyle primaryNumberStyle = buildCellStyleForNumber(workbook, PRIMARY_COLOR);
-        CellStyle primaryProbaStyle = buildCellStyleForProba(workbook, PRIMARY_COLOR);
-        CellStyle secondaryNumberStyle = buildCellStyleForNumber(workbook, SECONDARY_COLOR);
-
-        normalNumberStyle.setAlignment(HorizontalAlignment.CENTER);
-        normalProbaStyle.setAlignment(HorizontalAlignment.CENTER);
-        primaryNumberStyle.setAlignment(HorizontalAlignment.CENTER);
-        primaryProbaStyle.setAlignment(HorizontalAlignment.CENTER);
-        secondaryNumberStyle.setAlignment(HorizontalAlignment.CENTER);
+    private <T extends NucleotidesHolder> Sheet fillFileTrinu(T g, CellStyles styles, Sheet sheet) {
+        CellStyle normalStyle = styles.normal;
+        CellStyle primaryStyle = styles.primary;
+        CellStyle normalNumberStyle = styles.normalNumber;
+        CellStyle normalProbaStyle = styles.normalProba;
+        CellStyle primaryNumberStyle = styles.primaryNumber;
+        CellStyle primaryProbaStyle = styles.primaryProba;
+        CellStyle secondaryNumberStyle = styles.secondaryNumber;
 
-        XSSFCell tmpCell;
-        XSSFRow row;
+        Cell tmpCell;
+        Row row;
 
         if ((row = sheet.getRow(0)) == null)
             row = sheet.createRow(0);
@@ -526,7 +610,16 @@ public class FileServiceImpl implements IFileService {
         tmpCell.setCellStyle(primaryStyle);
 
         int i = 1;
-        Set<String> keys = g.getTrinuStatPhase0().keySet();
+        Map<String, Long> stat0 = g.getTrinuStatPhase0();
+        Map<String, Long> stat1 = g.getTrinuStatPhase1();
+        Map<String, Long> stat2 = g.getTrinuStatPhase2();
+        Map<String, Double> proba0 = g.getTrinuProbaPhase0();
+        Map<String, Double> proba1 = g.getTrinuProbaPhase1();
+        Map<String, Double> proba2 = g.getTrinuProbaPhase2();
+        Map<String, Integer> pref0 = g.getTrinuPrefPhase0();
+        Map<String, Integer> pref1 = g.getTrinuPrefPhase1();
+        Map<String, Integer> pref2 = g.getTrinuPrefPhase2();
+        Set<String> keys = stat0.keySet();
 
         CellStyle style = normalStyle;
         CellStyle probaStyle = normalProbaStyle;
@@ -557,59 +650,59 @@ public class FileServiceImpl implements IFileService {
 
             // NB phase 0
             tmpCell = row.createCell(1);
-            tmpCell.setCellValue(g.getTrinuStatPhase0().get(key));
+            tmpCell.setCellValue(stat0.get(key));
             tmpCell.setCellType(CellType.NUMERIC);
             tmpCell.setCellStyle(numberStyle);
             //tmp0 += g.trinuStatPhase0.get(key);
 
             // Proba phase 0
             tmpCell = row.createCell(2);
-            tmpCell.setCellValue(g.getTrinuProbaPhase0().get(key));
+            tmpCell.setCellValue(proba0.get(key));
             tmpCell.setCellType(CellType.NUMERIC);
             tmpCell.setCellStyle(probaStyle);
 
             // NB phase 1
             tmpCell = row.createCell(3);
-            tmpCell.setCellValue(g.getTrinuStatPhase1().get(key));
+            tmpCell.setCellValue(stat1.get(key));
             tmpCell.setCellType(CellType.NUMERIC);
             tmpCell.setCellStyle(numberStyle);
             //tmp1 += g.trinuStatPhase1.get(key);
 
             // Proba phase 1
             tmpCell = row.createCell(4);
-            tmpCell.setCellValue(g.getTrinuProbaPhase1().get(key));
+            tmpCell.setCellValue(proba1.get(key));
             tmpCell.setCellType(CellType.NUMERIC);
             tmpCell.setCellStyle(probaStyle);
             //tmpCell.setCellType(XSSFCell.CELL_TYPE_NUMERIC);
 
             // NB phase 2
             tmpCell = row.createCell(5);
-            tmpCell.setCellValue(g.getTrinuStatPhase2().get(key));
+            tmpCell.setCellValue(stat2.get(key));
             tmpCell.setCellType(CellType.NUMERIC);
             tmpCell.setCellStyle(numberStyle);
             //tmp2 += g.trinuStatPhase2.get(key);
 
             // Proba phase 2
             tmpCell = row.createCell(6);
-            tmpCell.setCellValue(g.getTrinuProbaPhase2().get(key));
+            tmpCell.setCellValue(proba2.get(key));
             tmpCell.setCellType(CellType.NUMERIC);
             tmpCell.setCellStyle(probaStyle);
 
             //Phase préf 0
             tmpCell = row.createCell(7);
-            tmpCell.setCellValue(g.getTrinuPrefPhase0().get(key));
+            tmpCell.setCellValue(pref0.get(key));
             tmpCell.setCellType(CellType.NUMERIC);
             tmpCell.setCellStyle(prefNumberStyle);
 
             //Phase préf 1
             tmpCell = row.createCell(8);
-            tmpCell.setCellValue(g.getTrinuPrefPhase1().get(key));
+            tmpCell.setCellValue(pref1.get(key));
             tmpCell.setCellType(CellType.NUMERIC);
             tmpCell.setCellStyle(prefNumberStyle);
 
             //Phase préf 2
             tmpCell = row.createCell(9);
-            tmpCell.setCellValue(g.getTrinuPrefPhase2().get(key));
+            tmpCell.setCellValue(pref2.get(key));
             tmpCell.setCellType(CellType.NUMERIC);
             tmpCell.setCellStyle(prefNumberStyle);
 
@@ -668,37 +761,21 @@ public class FileServiceImpl implements IFileService {
         tmpCell.setCellStyle(primaryNumberStyle);
 
 
-        sheet.autoSizeColumn(0);
-        sheet.autoSizeColumn(1);
-        sheet.autoSizeColumn(2);
-        sheet.autoSizeColumn(3);
-        sheet.autoSizeColumn(4);
-        sheet.autoSizeColumn(5);
-        sheet.autoSizeColumn(6);
-        sheet.autoSizeColumn(7);
-        sheet.autoSizeColumn(8);
-        sheet.autoSizeColumn(9);
-
         return sheet;
     }
 
-    private <T extends NucleotidesHolder> XSSFSheet fillFileDinu(T g, XSSFWorkbook workbook, XSSFSheet sheet) {
-        CellStyle normalStyle = buildCellStyle(workbook, NORMAL_COLOR);
-        CellStyle primaryStyle = buildCellStyle(workbook, PRIMARY_COLOR);
-        CellStyle normalNumberStyle = buildCellStyleForNumber(workbook, NORMAL_COLOR);
-        CellStyle normalProbaStyle = buildCellStyleForProba(workbook, NORMAL_COLOR);
-        CellStyle primaryNumberStyle = buildCellStyleForNumber(workbook, PRIMARY_COLOR);
-        CellStyle primaryProbaStyle = buildCellStyleForProba(workbook, PRIMARY_COLOR);
-
-        normalNumberStyle.setAlignment(HorizontalAlignment.CENTER);
-        normalProbaStyle.setAlignment(HorizontalAlignment.CENTER);
-        primaryNumberStyle.setAlignment(HorizontalAlignment.CENTER);
-        primaryProbaStyle.setAlignment(HorizontalAlignment.CENTER);
+    private <T extends NucleotidesHolder> Sheet fillFileDinu(T g, CellStyles styles, Sheet sheet) {
+        CellStyle normalStyle = styles.normal;
+        CellStyle primaryStyle = styles.primary;
+        CellStyle normalNumberStyle = styles.normalNumber;
+        CellStyle normalProbaStyle = styles.normalProba;
+        CellStyle primaryNumberStyle = styles.primaryNumber;
+        CellStyle primaryProbaStyle = styles.primaryProba;
 
-        XSSFCell tmpCell;
-        XSSFRow row;
+        Cell tmpCell;
+        Row row;
 
-        int rowNumber =  g.getTrinuProbaPhase0().size() + 3;
+        int rowNumber =  CodonIndex.TRINUCLEOTIDE_COUNT + 3;
 
         if ((row = sheet.getRow(rowNumber)) == null)
             row = sheet.createRow(rowNumber);
@@ -708,7 +785,11 @@ public class FileServiceImpl implements IFileService {
         CellStyle numberStyle = normalNumberStyle;
         CellStyle prefNumberStyle = normalNumberStyle;
 
-        Set<String> keys = g.getDinuStatPhase0().keySet();
+        Map<String, Long> stat0 = g.getDinuStatPhase0();
+        Map<String, Long> stat1 = g.getDinuStatPhase1();
+        Map<String, Double> proba0 = g.getDinuProbaPhase0();
+        Map<String, Double> proba1 = g.getDinuProbaPhase1();
+        Set<String> keys = stat0.keySet();
 
         int i = rowNumber + 3;
         for (String key : keys) {
@@ -733,25 +814,25 @@ public class FileServiceImpl implements IFileService {
 
             // NB phase 0
             tmpCell = row.createCell(1);
-            tmpCell.setCellValue(g.getDinuStatPhase0().get(key));
+            tmpCell.setCellValue(stat0.get(key));
             tmpCell.setCellType(CellType.NUMERIC);
             tmpCell.setCellStyle(numberStyle);
 
             // Proba phase 0
             tmpCell = row.createCell(2);
-            tmpCell.setCellValue(g.getDinuProbaPhase0().get(key));
+            tmpCell.setCellValue(proba0.get(key));
             tmpCell.setCellType(CellType.NUMERIC);
             tmpCell.setCellStyle(probaStyle);
 
             // NB phase 1
             tmpCell = row.createCell(3);
-            tmpCell.setCellValue(g.getDinuStatPhase1().get(key));
+            tmpCell.setCellValue(stat1.get(key));
             tmpCell.setCellType(CellType.NUMERIC);
             tmpCell.setCellStyle(numberStyle);
 
             // Proba phase 1
             tmpCell = row.createCell(4);
-            tmpCell.setCellValue(g.getDinuProbaPhase1().get(key));
+            tmpCell.setCellValue(proba1.get(key));
             tmpCell.setCellType(CellType.NUMERIC);
             tmpCell.setCellStyle(probaStyle);
 
@@ -785,11 +866,6 @@ public class FileServiceImpl implements IFileService {
         tmpCell.setCellType(CellType.NUMERIC);
         tmpCell.setCellStyle(primaryProbaStyle);
 
-        sheet.autoSizeColumn(1);
-        sheet.autoSizeColumn(2);
-        sheet.autoSizeColumn(3);
-        sheet.autoSizeColumn(4);
-
         return sheet;
     }
 
@@ -1,33 +1,54 @@
 package service.impl;
 
-import com.google.api.client.http.HttpResponse;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.util.concurrent.*;
 import com.google.inject.Inject;
+import com.google.inject.name.Named;
 
 import model.*;
 import service.interfaces.*;
 
 import java.io.InputStream;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
-public class GeneServiceImpl extends NucleotideHolderService implements IGeneService {
-    private final int MAX_RETRIES = 5; // Retente 5 fois
+public class GeneServiceImpl implements IGeneService {
     private final IStatisticsService statisticsService;
     private final IHttpService httpService;
     private final IParseService parseService;
-    private final ListeningExecutorService executorService;
+    private final ListeningExecutorService networkStage;
+    private final ListeningExecutorService parseStage;
     private final IProgramStatsService programStatsService;
     private final IProgressService progressService;
-    private final HashMap<String, Integer> retries = new HashMap<>();
+    private final IRepliconCacheService repliconCacheService;
+    private final IBatchFetchService batchFetchService;
+    private final IKingdomService kingdomService;
+    private final ILocalFastaService localFastaService;
+    // Opt-in (fetchBatchSize above 1): the batches come from NCBI efetch, which returns the current version of the
+    // replicon rather than the one of the organism update date served by hsbiti.fr, and are not hedged
+    private final boolean batchFetch;
+    // Counts of a replicon shared by the kingdoms listing it, by accession and update date: being computed, then
+    // kept for the most recent ones
+    private final ConcurrentMap<String, ListenableFuture<Gene>> countsInFlight = new ConcurrentHashMap<>();
+    private final Cache<String, Gene> recentCounts;
 
     @Inject
-    public GeneServiceImpl(IStatisticsService statisticsService, IHttpService httpService, IParseService parseService, ListeningExecutorService listeningExecutorService, IProgramStatsService programStatsService, IProgressService progressService) {
+    public GeneServiceImpl(IStatisticsService statisticsService, IHttpService httpService, IParseService parseService, @Named("NetworkStage") ListeningExecutorService networkStage, @Named("ParseStage") ListeningExecutorService parseStage, IProgramStatsService programStatsService, IProgressService progressService, IRepliconCacheService repliconCacheService, IBatchFetchService batchFetchService, IKingdomService kingdomService, ILocalFastaService localFastaService, IConfigService configService) {
         this.statisticsService = statisticsService;
         this.httpService = httpService;
         this.parseService = parseService;
-        this.executorService = listeningExecutorService;
+        this.networkStage = networkStage;
+        this.parseStage = parseStage;
         this.programStatsService = programStatsService;
         this.progressService = progressService;
+        this.repliconCacheService = repliconCacheService;
+        this.batchFetchService = batchFetchService;
+        this.kingdomService = kingdomService;
+        this.localFastaService = localFastaService;
+        this.batchFetch = Integer.parseInt(configService.getProperty("fetchBatchSize")) > 1;
+        this.recentCounts = CacheBuilder.newBuilder().maximumSize(Long.parseLong(configService.getProperty("repliconMemoSize"))).build();
     }
 
     private String generateUrlForGene(String id, Date date) {
@@ -60,149 +81,109 @@ public class GeneServiceImpl extends NucleotideHolderService implements IGeneSer
     		type="replicon";
     	}
 
-        Gene gene = new Gene(name, type, path, totalDinucleotides, totalTrinucleotides);
-
-        gene.setTrinuStatPhase0(initLinkedHashMap());
-        gene.setTrinuStatPhase1(initLinkedHashMap());
-        gene.setTrinuStatPhase2(initLinkedHashMap());
-
-        gene.setTrinuProbaPhase0(initLinkedHashMapProba());
-        gene.setTrinuProbaPhase1(initLinkedHashMapProba());
-        gene.setTrinuProbaPhase2(initLinkedHashMapProba());
-
-        gene.setTrinuPrefPhase0(initLinkedHashMap());
-        gene.setTrinuPrefPhase2(initLinkedHashMap());
-        gene.setTrinuPrefPhase1(initLinkedHashMap());
-
-        gene.setDinuStatPhase0(initLinkedHashMapDinucleo());
-        gene.setDinuStatPhase1(initLinkedHashMapDinucleo());
-
-        gene.setDinuProbaPhase0(initLinkedHashMapDinucleoProba());
-        gene.setDinuProbaPhase1(initLinkedHashMapDinucleoProba());
-
-        return gene;
+        return new Gene(name, type, path, totalDinucleotides, totalTrinucleotides);
     }
 
+    /**
+     * A replicon listed by several kingdoms is downloaded and counted once: the requests for the same accession and
+     * update date share the counting in progress or reuse its recent result. Each caller gets its own gene, named
+     * and typed after its geneId, with the statistics computed on the parse stage.
+     * Nothing is shared when the sequences are saved (genes or genomes selected), each organism needs its copy.
+     */
     @Override
     public ListenableFuture<Gene> processGene(Kingdom kingdom, Organism organism, Tuple<String, String> geneId) {
-        ListenableFuture<Gene> processGeneFuture = executorService.submit(() -> {
-            Gene gene = createGene(geneId.getT1(), geneId.getT2(), organism.getPath(), 0, 0);
-
-            progressService.getCurrentDownloadProgress().setDownloading(geneId.getT1() + " (" + kingdom.name() + ")");
-            progressService.invalidateDownloadProgress();
-
-            String url = generateUrlForGene(geneId.getT1(), organism.getUpdatedDate());
-            HttpResponse httpResponse = httpService.get(url).get();
-
-            progressService.getCurrentDownloadProgress().getProgress().incrementAndGet();
-            progressService.getCurrentDownloadProgress().setDownloaded(geneId.getT1() + " (" + kingdom.name() + ")");
-            progressService.invalidateDownloadProgress();
-
-            InputStream inputStream = httpResponse.getContent();
-            List<String> sequences;
-
-            sequences = parseService.extractSequences(inputStream, gene).get();
-
-            gene = extractStatisticsSequenceForDinucleotides(sequences, gene, 0);
-            gene = extractStatisticsSequenceForTrinucleotides(sequences, gene, 0);
-            gene = statisticsService.computeStatistics(kingdom, organism, gene).get();
-
-            return gene;
-        });
-
-        return Futures.catchingAsync(processGeneFuture, Throwable.class, throwable -> {
-            retries.putIfAbsent(geneId.getT1(), 0);
-            Integer currentRetryCount = retries.get(geneId.getT1());
-            if (geneId.getT1().startsWith("NC_") && currentRetryCount < MAX_RETRIES) {
-                currentRetryCount++;
-                retries.put(geneId.getT1(), currentRetryCount);
-                return processGene(kingdom, organism, geneId);
+        String key = getCountsKey(geneId.getT1(), organism.getUpdatedDate());
+        boolean shared = !kingdomService.getGenesCkBIsSelected() && !kingdomService.getGenomesCkBIsSelected();
+        Gene counts = shared ? recentCounts.getIfPresent(key) : null;
+        ListenableFuture<Gene> countsFuture;
+        if (!shared) {
+            countsFuture = countGene(kingdom, organism, geneId);
+        } else if (counts != null) {
+            countsFuture = Futures.immediateFuture(counts);
+        } else {
+            SettableFuture<Gene> flight = SettableFuture.create();
+            ListenableFuture<Gene> existingFlight = countsInFlight.putIfAbsent(key, flight);
+            if (existingFlight != null) {
+                countsFuture = existingFlight;
             } else {
-                return Futures.immediateFuture(null);
+                // The previous flight may have ended since the lookup
+                counts = recentCounts.getIfPresent(key);
+                flight.setFuture(counts != null ? Futures.immediateFuture(counts) : countGene(kingdom, organism, geneId));
+                flight.addListener(() -> {
+                    Gene countedGene = Futures.getUnchecked(flight);
+                    if (countedGene != null) {
+                        recentCounts.put(key, countedGene);
+                    }
+                    countsInFlight.remove(key, flight);
+                }, MoreExecutors.directExecutor());
+                countsFuture = flight;
             }
-        }, executorService);
-    }
+        }
 
-    @SuppressWarnings("unchecked")
-	private Gene extractStatisticsSequenceForTrinucleotides(final String sequence, final Gene gene) {
-
-            String codon0, codon1, codon2;
-
-            int j = 0;
-            
-			LinkedHashMap<String, Integer> beforeCount0 = (LinkedHashMap<String, Integer>) gene.getTrinuStatPhase0().clone();
-            LinkedHashMap<String, Integer> beforeCount1 = (LinkedHashMap<String, Integer>) gene.getTrinuStatPhase1().clone();
-            LinkedHashMap<String, Integer> beforeCount2 = (LinkedHashMap<String, Integer>) gene.getTrinuStatPhase2().clone();
-
-            for (int i = 0; i < sequence.length() - 3; i += 3) {
-                codon0 = sequence.substring(i, i + 3);
-                codon1 = sequence.substring(i + 1, i + 4);
-                codon2 = sequence.substring(i + 2, i + 5);
-                gene.getTrinuStatPhase0().put(codon0, gene.getTrinuStatPhase0().get(codon0) + 1);
-                gene.getTrinuStatPhase1().put(codon1, gene.getTrinuStatPhase1().get(codon1) + 1);
-                gene.getTrinuStatPhase2().put(codon2, gene.getTrinuStatPhase2().get(codon2) + 1);
-                j++;
-            }
-            
-            for (String s : beforeCount0.keySet()) {
-            	beforeCount0.put(s, gene.getTrinuStatPhase0().get(s) - beforeCount0.get(s));
-            	beforeCount1.put(s, gene.getTrinuStatPhase1().get(s) - beforeCount1.get(s));
-            	beforeCount2.put(s, gene.getTrinuStatPhase2().get(s) - beforeCount2.get(s));
-            	
-            	int max = Math.max(beforeCount0.get(s), Math.max(beforeCount1.get(s), beforeCount2.get(s)));
-            	
-            	if (max == beforeCount0.get(s)) {
-                	gene.getTrinuPrefPhase0().put(s, gene.getTrinuPrefPhase0().get(s) + 1);
-                	gene.setTotalPrefTrinu0(gene.getTotalPrefTrinu0() + 1);
-            	}
-            	
-            	if (max == beforeCount1.get(s)) {
-                	gene.getTrinuPrefPhase1().put(s, gene.getTrinuPrefPhase1().get(s) + 1);
-                	gene.setTotalPrefTrinu1(gene.getTotalPrefTrinu1() + 1);
-            	}
-            	
-            	if (max == beforeCount2.get(s)) {
-                	gene.getTrinuPrefPhase2().put(s, gene.getTrinuPrefPhase2().get(s) + 1);
-                	gene.setTotalPrefTrinu2(gene.getTotalPrefTrinu2() + 1);
-            	}
+        // A caller giving up does not cancel the counting for the others
+        return Futures.transformAsync(Futures.nonCancellationPropagating(countsFuture), countedGene -> {
+            if (countedGene == null) {
+                return Futures.immediateFuture(null);
             }
-
-            gene.setTotalTrinucleotide(gene.getTotalTrinucleotide() + j);
-
-            return gene;
+            Gene gene = createGene(geneId.getT1(), geneId.getT2(), organism.getPath(), 0, 0);
+            gene.addCounts(countedGene);
+            return statisticsService.computeStatistics(kingdom, organism, gene);
+        }, parseStage);
     }
 
-    private Gene extractStatisticsSequenceForDinucleotides(final String sequence, final Gene gene) {
-            String codon0, codon1;
-            int j = 0;
+    private String getCountsKey(String accession, Date updateDate) {
+        if (updateDate == null) {
+            return accession;
+        }
+        Calendar c = Calendar.getInstance();
+        c.setTime(updateDate);
+        return accession + "/" + c.get(Calendar.YEAR) + "_" + (c.get(Calendar.MONTH) + 1) + "_" + c.get(Calendar.DAY_OF_MONTH);
+    }
 
-            for (int i = 0; i < sequence.length()-(3+sequence.length()%2)+1; i += 2) {
-                codon0 = sequence.substring(i, i + 2);
-                codon1 = sequence.substring(i+1, i + 3);
-                gene.getDinuStatPhase0().put(codon0, gene.getDinuStatPhase0().get(codon0) + 1);
-                gene.getDinuStatPhase1().put(codon1, gene.getDinuStatPhase1().get(codon1) + 1);
-                j ++;
+    /**
+     * Returns the raw counts of the replicon, or null when it could not be counted.
+     * The replicon goes through the stages of the pipeline: the local and cache lookups, the download and the reading
+     * of the body on the network stage, the parsing and counting of what was read on the parse stage. The network
+     * stage waits when the parse stage is full.
+     * The download is only retried by the HTTP service, so the attempts per replicon stay bounded by its own.
+     */
+    private ListenableFuture<Gene> countGene(Kingdom kingdom, Organism organism, Tuple<String, String> geneId) {
+        // Replicons of the local FASTA-CDS files are read from them, the ones already downloaded for this update date
+        // from the cache
+        ListenableFuture<InputStream> contentFuture = Futures.transformAsync(networkStage.submit(() -> {
+            InputStream localContent = localFastaService.open(geneId.getT1());
+            return localContent != null ? localContent : repliconCacheService.get(geneId.getT1(), organism.getUpdatedDate());
+        }), cachedContent -> {
+            if (cachedContent != null) {
+                return Futures.immediateFuture(cachedContent);
             }
+            progressService.getCurrentDownloadProgress().setDownloading(geneId.getT1() + " (" + kingdom.name() + ")");
+            progressService.invalidateDownloadProgress();
 
-            gene.setTotalDinucleotide(gene.getTotalDinucleotide() + j);
-
-            return gene;
-    }
+            ListenableFuture<InputStream> downloadFuture;
+            if (batchFetch) {
+                downloadFuture = batchFetchService.fetch(geneId.getT1());
+            } else {
+                String url = generateUrlForGene(geneId.getT1(), organism.getUpdatedDate());
+                downloadFuture = Futures.transform(httpService.get(url), HttpResult::getContent);
+            }
+            return Futures.transformAsync(downloadFuture, content ->
+                    Futures.immediateFuture(repliconCacheService.put(geneId.getT1(), organism.getUpdatedDate(), content)), networkStage);
+        }, networkStage);
 
-    private Gene extractStatisticsSequenceForDinucleotides(List<String> sequences, Gene gene, int index) {
-        if (index < sequences.size()) {
-            Gene geneTreated = extractStatisticsSequenceForDinucleotides(sequences.get(index), gene);
-            return extractStatisticsSequenceForDinucleotides(sequences, geneTreated, index + 1);
-        } else {
-            return gene;
-        }
-    }
+        ListenableFuture<Gene> attemptFuture = Futures.transformAsync(contentFuture, inputStream -> {
+            progressService.getCurrentDownloadProgress().getProgress().incrementAndGet();
+            progressService.getCurrentDownloadProgress().setDownloaded(geneId.getT1() + " (" + kingdom.name() + ")");
+            progressService.invalidateDownloadProgress();
 
-    private Gene extractStatisticsSequenceForTrinucleotides(List<String> sequences, Gene gene, int index) {
-        if (index < sequences.size()) {
-            Gene geneTreated = extractStatisticsSequenceForTrinucleotides(sequences.get(index), gene);
-            return extractStatisticsSequenceForTrinucleotides(sequences, gene, index + 1);
-        }
-        return gene;
+            Gene gene = createGene(geneId.getT1(), geneId.getT2(), organism.getPath(), 0, 0);
+            return parseService.extractSequences(inputStream, gene, (sequence, length) -> CodonCounter.count(sequence, length, gene));
+        }, networkStage);
+
+        return Futures.catching(attemptFuture, Throwable.class, throwable -> {
+            // The cached file may be the cause of the failure, the next run downloads it again
+            repliconCacheService.invalidate(geneId.getT1(), organism.getUpdatedDate());
+            return null;
+        }, networkStage);
     }
 }
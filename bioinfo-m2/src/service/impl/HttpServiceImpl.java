@@ -1,87 +1,407 @@
 package service.impl;
 
-import com.google.api.client.http.*;
 import com.google.common.util.concurrent.*;
 import com.google.inject.Inject;
 import com.google.inject.name.Named;
 
-import service.interfaces.ApiStatus;
-import service.interfaces.IHttpService;
-import service.interfaces.IProgramStatsService;
-import service.interfaces.IProgressService;
+import service.exception.HttpStatusException;
+import service.interfaces.*;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.entity.ContentType;
+import org.apache.http.nio.ContentDecoder;
+import org.apache.http.nio.IOControl;
+import org.apache.http.nio.client.methods.HttpAsyncMethods;
+import org.apache.http.nio.protocol.AbstractAsyncResponseConsumer;
+import org.apache.http.pool.PoolStats;
+import org.apache.http.protocol.HttpContext;
 
 import java.io.*;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
 
+/**
+ * Requests go through the non-blocking client: no thread waits for a response, the number of requests in flight
+ * is only bounded by the connection pool, whose connections are kept alive between requests.
+ * With hedgeRequests, a request slower than most of the recent requests to its host is sent again and the first
+ * response wins (see {@link #hedgedExecute}).
+ */
 public class HttpServiceImpl implements IHttpService {
-    private final HttpRequestFactory requestFactory;
-    private final RateLimiter rateLimiter;
+    private static final int MAX_ATTEMPTS = 5;
+    private static final int LATENCY_WINDOW = 256;
+    private static final int MIN_LATENCIES = 20;
+    private static final double MAX_HEDGE_TOKENS = 10;
+    private final CloseableHttpAsyncClient httpClient;
+    private final PoolingNHttpClientConnectionManager connectionManager;
+    private final IRateLimiterService rateLimiterService;
+    private final IRetryService retryService;
     private final ListeningExecutorService executorService;
     private final IProgramStatsService programStatsService;
     private final IProgressService progressService;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final ScheduledExecutorService hedgeScheduler;
+    private final boolean hedging;
+    private final double hedgePercentile;
+    private final double hedgeBudget;
+    private final String hedgeBaseUrl;
+    private final Map<String, LatencyWindow> latencies = new ConcurrentHashMap<>();
+    private final AtomicLong hedges = new AtomicLong();
+    private final AtomicLong hedgeWins = new AtomicLong();
+    private double hedgeTokens = 0;
 
     private boolean apiTrouble = false;
 
     @Inject
-    public HttpServiceImpl(HttpTransport transport, RateLimiter rateLimiter, @Named("HttpExecutor") ListeningExecutorService listeningExecutorService, IProgramStatsService programStatsService, IProgressService progressService) {
-
-    	this.requestFactory = transport.createRequestFactory(new HttpRequestInitializer());
-        this.rateLimiter = rateLimiter;
+    public HttpServiceImpl(CloseableHttpAsyncClient httpClient, PoolingNHttpClientConnectionManager connectionManager, IRateLimiterService rateLimiterService, IRetryService retryService, @Named("NetworkStage") ListeningExecutorService listeningExecutorService, @Named("HedgeScheduler") ScheduledExecutorService hedgeScheduler, IProgramStatsService programStatsService, IProgressService progressService, IConfigService configService) {
+        this.httpClient = httpClient;
+        this.connectionManager = connectionManager;
+        this.rateLimiterService = rateLimiterService;
+        this.retryService = retryService;
         this.executorService = listeningExecutorService;
         this.programStatsService = programStatsService;
         this.progressService = progressService;
+        this.hedgeScheduler = hedgeScheduler;
+        this.hedging = Boolean.parseBoolean(configService.getProperty("hedgeRequests"));
+        this.hedgePercentile = Double.parseDouble(configService.getProperty("hedgePercentile"));
+        this.hedgeBudget = Double.parseDouble(configService.getProperty("hedgeBudget"));
+        String baseUrl = configService.getProperty("hedgeBaseUrl");
+        this.hedgeBaseUrl = baseUrl == null ? "" : baseUrl.trim().replaceAll("/+$", "");
+
+        this.httpClient.start();
     }
 
-    public ListenableFuture<HttpResponse> get(final String url) {
+    public ListenableFuture<HttpResult> get(final String url) {
         return get(url, null);
     }
 
-    public ListenableFuture<HttpResponse> get(final String url, final String geneId) {
-        ListenableFuture<HttpResponse> responseFuture = executorService.submit(() -> {
-            rateLimiter.acquire();
+    public ListenableFuture<HttpResult> get(final String url, final String geneId) {
+        return retryService.retry(url, URI.create(url).getHost(), MAX_ATTEMPTS, () -> attempt(url, geneId, null, null));
+    }
+
+    @Override
+    public ListenableFuture<HttpResult> getIfModified(final String url, final String etag, final String lastModified) {
+        return retryService.retry(url, URI.create(url).getHost(), MAX_ATTEMPTS, () -> attempt(url, null, etag, lastModified));
+    }
+
+    private ListenableFuture<HttpResult> attempt(final String url, final String geneId, final String etag, final String lastModified) {
+        // Only waiting for the rate limiter takes a thread
+        ListenableFuture<HttpResult> responseFuture = Futures.transformAsync(executorService.submit(() -> {
+            rateLimiterService.acquire(URI.create(url).getHost());
             //System.out.println("Request : " + "http://eutils.ncbi.nlm.nih.gov/entrez/eutils/efetch.fcgi?db=nuccore&id="+ geneId +"&rettype=fasta_cds_na&retmode=text");
             if (geneId != null) {
                 progressService.getCurrentDownloadProgress().setDownloading(geneId);
                 progressService.invalidateDownloadProgress();
             }
-            GenericUrl genericUrl = new GenericUrl(url);
-            HttpRequest request = requestFactory.buildGetRequest(genericUrl);
-            return request.execute();
-        });
-        ListenableFuture<HttpResponse> failureCatchingFuture = Futures.catchingAsync(responseFuture, Throwable.class, exception -> {
-            if (exception != null) {
-                progressService.getCurrentApiStatus().setMessage("	");
+            return url;
+        }), checkedUrl -> hedgedExecute(checkedUrl, etag, lastModified), MoreExecutors.directExecutor());
+
+        // Inflating starts by reading the gzip header, so it is not set up on the I/O reactor
+        ListenableFuture<HttpResult> checkedFuture = Futures.transformAsync(responseFuture, httpResult -> {
+            if (httpResult.getStatusCode() != 304 && "gzip".equalsIgnoreCase(httpResult.getHeader("Content-Encoding"))) {
+                return Futures.immediateFuture(httpResult.withContent(new GZIPInputStream(httpResult.getContent(), 65536)));
+            }
+            return Futures.immediateFuture(httpResult);
+        }, executorService);
+
+        Futures.addCallback(checkedFuture, new com.google.common.util.concurrent.FutureCallback<HttpResult>() {
+            @Override
+            public void onSuccess(HttpResult httpResult) {
+                if(!apiTrouble) {
+                    progressService.getCurrentApiStatus().setMessage("API Online");
+                    progressService.getCurrentApiStatus().setColor(ApiStatus.ONLINE_COLOR);
+                } else {
+                    progressService.getCurrentApiStatus().setMessage("API Online - Could not get all data (server issues)");
+                    progressService.getCurrentApiStatus().setColor(ApiStatus.TROUBLE_COLOR);
+                }
+                progressService.invalidateApiStatus();
+            }
+
+            @Override
+            public void onFailure(Throwable exception) {
+                String host = URI.create(url).getHost();
+                if (retryService.isCircuitOpen(host)) {
+                    progressService.getCurrentApiStatus().setMessage("API Offline - Requests to " + host + " paused after repeated failures");
+                } else {
+                    progressService.getCurrentApiStatus().setMessage("	");
+                }
                 apiTrouble = true;
                 progressService.getCurrentApiStatus().setColor(ApiStatus.OFFLINE_COLOR);
                 progressService.invalidateApiStatus();
                 exception.printStackTrace();
             }
-            //return get(url, geneId);
-            return null;
         }, executorService);
 
-        return Futures.transformAsync(failureCatchingFuture, httpResponse -> {
-            if(!apiTrouble) {
-                progressService.getCurrentApiStatus().setMessage("API Online");
-                progressService.getCurrentApiStatus().setColor(ApiStatus.ONLINE_COLOR);
-            } else {
-                progressService.getCurrentApiStatus().setMessage("API Online - Could not get all data (server issues)");
-                progressService.getCurrentApiStatus().setColor(ApiStatus.TROUBLE_COLOR);
+        return checkedFuture;
+    }
+
+    /**
+     * Once enough requests to the host were timed, a request still waiting for its response after the hedgePercentile
+     * of their latencies is sent again, to hedgeBaseUrl when it is set. The first response wins and the other request
+     * is aborted (or its body discarded if it already started).
+     * The hedges use a budget of their own, hedgeBudget of the requests, and only take the permits of the rate
+     * limiter that are free at that time, so they never make the requests exceed the rate of the host.
+     */
+    private ListenableFuture<HttpResult> hedgedExecute(String url, String etag, String lastModified) {
+        if (!hedging) {
+            return execute(url, etag, lastModified);
+        }
+        LatencyWindow window = latencies.computeIfAbsent(URI.create(url).getHost(), host -> new LatencyWindow(LATENCY_WINDOW));
+        long start = System.nanoTime();
+        ListenableFuture<HttpResult> primary = execute(url, etag, lastModified);
+        // An aborted request only gives a lower bound of its latency, which is still recorded so that slow hosts
+        // are not hedged more and more
+        primary.addListener(() -> window.record(System.nanoTime() - start), MoreExecutors.directExecutor());
+        synchronized (this) {
+            hedgeTokens = Math.min(MAX_HEDGE_TOKENS, hedgeTokens + hedgeBudget);
+        }
+
+        long delay = window.percentile(hedgePercentile, MIN_LATENCIES);
+        if (delay < 0) {
+            return primary;
+        }
+        HedgedRequest hedgedRequest = new HedgedRequest();
+        hedgedRequest.add(primary, false);
+        ScheduledFuture<?> hedgeTask = hedgeScheduler.schedule(() -> {
+            String hedgeUrl = getHedgeUrl(url);
+            if (!hedgedRequest.result.isDone() && tryHedge(URI.create(hedgeUrl).getHost())) {
+                hedges.incrementAndGet();
+                hedgedRequest.add(execute(hedgeUrl, etag, lastModified), true);
+            }
+        }, delay, TimeUnit.NANOSECONDS);
+        hedgedRequest.result.addListener(() -> hedgeTask.cancel(false), MoreExecutors.directExecutor());
+        return hedgedRequest.result;
+    }
+
+    private synchronized boolean tryHedge(String host) {
+        if (hedgeTokens < 1 || !rateLimiterService.tryAcquire(host)) {
+            return false;
+        }
+        hedgeTokens--;
+        return true;
+    }
+
+    private String getHedgeUrl(String url) {
+        if (hedgeBaseUrl.isEmpty()) {
+            return url;
+        }
+        URI uri = URI.create(url);
+        return hedgeBaseUrl + uri.getRawPath() + (uri.getRawQuery() == null ? "" : "?" + uri.getRawQuery());
+    }
+
+    /**
+     * Result of the first of the requests to succeed, or failure of the last one when they all fail.
+     */
+    private class HedgedRequest {
+        private final SettableFuture<HttpResult> result = SettableFuture.create();
+        private final List<ListenableFuture<HttpResult>> requests = new ArrayList<>();
+        private int pending = 0;
+
+        HedgedRequest() {
+            result.addListener(() -> {
+                if (result.isCancelled()) {
+                    cancelRequests(null);
+                }
+            }, MoreExecutors.directExecutor());
+        }
+
+        void add(ListenableFuture<HttpResult> request, boolean hedge) {
+            synchronized (this) {
+                requests.add(request);
+                pending++;
+            }
+            Futures.addCallback(request, new com.google.common.util.concurrent.FutureCallback<HttpResult>() {
+                @Override
+                public void onSuccess(HttpResult httpResult) {
+                    if (result.set(httpResult)) {
+                        if (hedge) {
+                            hedgeWins.incrementAndGet();
+                        }
+                        cancelRequests(request);
+                    } else {
+                        try {
+                            httpResult.getContent().close();
+                        } catch (IOException e) {
+                            e.printStackTrace();
+                        }
+                    }
+                }
+
+                @Override
+                public void onFailure(Throwable throwable) {
+                    boolean last;
+                    synchronized (HedgedRequest.this) {
+                        last = --pending == 0;
+                    }
+                    if (last) {
+                        result.setException(throwable);
+                    }
+                }
+            }, MoreExecutors.directExecutor());
+        }
+
+        private void cancelRequests(ListenableFuture<HttpResult> winner) {
+            List<ListenableFuture<HttpResult>> others;
+            synchronized (this) {
+                others = new ArrayList<>(requests);
             }
-            progressService.invalidateApiStatus();
-            if (httpResponse == null) {
-                return get(url);
+            for (ListenableFuture<HttpResult> request : others) {
+                if (request != winner) {
+                    request.cancel(false);
+                }
             }
+        }
+    }
+
+    /**
+     * The future completes as soon as the first bytes of the body are received (or the body ended), so the body is
+     * parsed while it is downloaded. An empty body fails the request, except for a 304 to a conditional request.
+     */
+    private ListenableFuture<HttpResult> execute(String url, String etag, String lastModified) {
+        SettableFuture<HttpResult> future = SettableFuture.create();
+        String host = URI.create(url).getHost();
+        long start = System.nanoTime();
+        ResponseBodyStream body = new ResponseBodyStream();
+        AtomicBoolean delivered = new AtomicBoolean();
+
+        AbstractAsyncResponseConsumer<Void> consumer = new AbstractAsyncResponseConsumer<Void>() {
+            private HttpResult result;
 
-            BufferedReader br = new BufferedReader(new InputStreamReader(httpResponse.getContent()));
-            br.mark(1);
-            int firstByte = br.read();
-            if (firstByte == -1) {
-                return get(url);
+            @Override
+            protected void onResponseReceived(HttpResponse response) {
+                // The latency reported to the rate limiter stops at the headers, so that it does not depend on the body size
+                int statusCode = response.getStatusLine().getStatusCode();
+                if (statusCode == 429 || statusCode >= 500) {
+                    rateLimiterService.onOverload(host);
+                } else {
+                    rateLimiterService.onSuccess(host, System.nanoTime() - start);
+                }
+                Map<String, String> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+                for (Header header : response.getAllHeaders()) {
+                    headers.put(header.getName(), header.getValue());
+                }
+                if (statusCode == 304 && (etag != null || lastModified != null)) {
+                    body.close();
+                    if (future.set(new HttpResult(statusCode, headers, new ByteArrayInputStream(new byte[0])))) {
+                        delivered.set(true);
+                    }
+                    return;
+                }
+                if (statusCode < 200 || statusCode >= 300) {
+                    body.close();
+                    future.setException(new HttpStatusException(statusCode, response.getStatusLine() + " (" + url + ")"));
+                    return;
+                }
+                result = new HttpResult(statusCode, headers, body);
             }
 
-            br.reset();
+            @Override
+            protected void onEntityEnclosed(HttpEntity entity, ContentType contentType) {
+            }
 
-            return Futures.immediateFuture(httpResponse);
-        }, executorService);
+            @Override
+            protected void onContentReceived(ContentDecoder decoder, IOControl ioControl) throws IOException {
+                body.consume(decoder, ioControl);
+                deliver();
+            }
+
+            @Override
+            protected Void buildResult(HttpContext context) {
+                body.end();
+                deliver();
+                return null;
+            }
+
+            private void deliver() {
+                if (result == null || !body.hasStarted()) {
+                    return;
+                }
+                if (body.isEmpty()) {
+                    future.setException(new IOException("Empty response (" + url + ")"));
+                } else if (future.set(result)) {
+                    delivered.set(true);
+                }
+            }
+
+            @Override
+            protected void releaseResources() {
+            }
+        };
+
+        HttpGet request = new HttpGet(url);
+        request.setHeader("Accept-Encoding", "gzip");
+        if (etag != null) {
+            request.setHeader("If-None-Match", etag);
+        }
+        if (lastModified != null) {
+            request.setHeader("If-Modified-Since", lastModified);
+        }
+        inFlight.incrementAndGet();
+        Future<Void> exchange = httpClient.execute(HttpAsyncMethods.create(request), consumer, new FutureCallback<Void>() {
+            @Override
+            public void completed(Void ignored) {
+                inFlight.decrementAndGet();
+                if (delivered.get()) {
+                    completed.incrementAndGet();
+                } else {
+                    failed.incrementAndGet();
+                }
+            }
+
+            @Override
+            public void failed(Exception e) {
+                inFlight.decrementAndGet();
+                // Connect and read timeouts
+                if (e instanceof InterruptedIOException) {
+                    rateLimiterService.onOverload(host);
+                }
+                failed.incrementAndGet();
+                body.fail(e);
+                future.setException(e);
+            }
+
+            @Override
+            public void cancelled() {
+                inFlight.decrementAndGet();
+                // Not a failure when aborted through the future (hedged request which lost)
+                if (!future.isCancelled()) {
+                    failed.incrementAndGet();
+                }
+                body.fail(new InterruptedIOException("Request cancelled (" + url + ")"));
+                future.cancel(false);
+            }
+        });
+        // Cancelling the future aborts the request, the connection is not reused
+        future.addListener(() -> {
+            if (future.isCancelled()) {
+                exchange.cancel(true);
+            }
+        }, MoreExecutors.directExecutor());
+        return future;
+    }
+
+    @Override
+    public HttpMetrics getMetrics() {
+        PoolStats stats = connectionManager.getTotalStats();
+        return new HttpMetrics(inFlight.get(), completed.get(), failed.get(), hedges.get(), hedgeWins.get(), stats.getLeased(), stats.getAvailable(), stats.getPending(), stats.getMax());
     }
-}
\ No newline at end of file
+}
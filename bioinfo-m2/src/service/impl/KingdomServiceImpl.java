@@ -1,11 +1,8 @@
 package service.impl;
 
-import com.google.api.client.http.HttpResponse;
-import com.google.common.base.Function;
 import com.google.common.util.concurrent.*;
 import com.google.inject.Inject;
 
-import model.Gene;
 import model.Kingdom;
 import model.Organism;
 import service.exception.NothingToProcesssException;
@@ -13,15 +10,12 @@ import service.interfaces.*;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.*;
-import java.util.concurrent.ExecutionException;
 import java.util.stream.Collectors;
 
 public class KingdomServiceImpl implements IKingdomService {
-    private final int PROCESS_STACK_SIZE = 50;
     private final IStatisticsService statisticsService;
     private final IParseService parseService;
     private final IFileService fileService;
@@ -33,13 +27,18 @@ public class KingdomServiceImpl implements IKingdomService {
     private final IProgramStatsService programStatsService;
     private final IZipService zipService;
     private final IGeneService geneService;
-    private HashMap<Kingdom, Map<String, Date>> updates = new HashMap<>();
+    private final IAggregationService aggregationService;
+    private final IUpdateJournalService updateJournalService;
+    private final IOrganismListService organismListService;
+    private final IPlasmidStoreService plasmidStoreService;
+    private final IPipelineService pipelineService;
     private HashMap<Kingdom, ListenableFuture<List<Organism>>> currentFutures = new HashMap<>();
     private boolean shouldInterrupt = false;
     private Boolean genesCkBIsSelected;
     private Boolean genomesCkBIsSelected;
     private boolean creatingExcelParents = false;
-    private HashMap<String, Gene> plasmidGenesMap = new HashMap<>();
+    private final int organismWindow;
+    private final int repliconWindow;
 
     @Inject
     public KingdomServiceImpl(IStatisticsService statisticsService,
@@ -52,7 +51,12 @@ public class KingdomServiceImpl implements IKingdomService {
                                  IProgressService progressService,
                                  IProgramStatsService programStatsService,
                                  IZipService zipService,
-                                 IGeneService geneService) {
+                                 IGeneService geneService,
+                                 IAggregationService aggregationService,
+                                 IUpdateJournalService updateJournalService,
+                                 IOrganismListService organismListService,
+                                 IPlasmidStoreService plasmidStoreService,
+                                 IPipelineService pipelineService) {
         this.statisticsService=statisticsService;
         this.fileService = fileService;
         this.parseService = parseService;
@@ -64,6 +68,13 @@ public class KingdomServiceImpl implements IKingdomService {
         this.programStatsService = programStatsService;
         this.zipService = zipService;
         this.geneService = geneService;
+        this.aggregationService = aggregationService;
+        this.updateJournalService = updateJournalService;
+        this.organismListService = organismListService;
+        this.plasmidStoreService = plasmidStoreService;
+        this.pipelineService = pipelineService;
+        this.organismWindow = Integer.parseInt(configService.getProperty("organismWindow"));
+        this.repliconWindow = Integer.parseInt(configService.getProperty("repliconWindow"));
 
         this.genomesCkBIsSelected = false;
         this.genesCkBIsSelected = false;
@@ -107,147 +118,95 @@ public class KingdomServiceImpl implements IKingdomService {
             currentFuture.getValue().cancel(true);
             currentFuture.getKey().setOrganisms(null);
             shouldInterrupt = true;
-            writeUpdateFile(currentFuture.getKey());
+            updateJournalService.sync(currentFuture.getKey());
         }
     }
 
-    private ListenableFuture<List<Boolean>> createDirectories(final Kingdom kingdom, final InputStream inputStream) {
+    private List<Boolean> createDirectories(final Kingdom kingdom, final List<Organism> organisms) {
         String dataDir = configService.getProperty("dataDir");
         String zipGene = configService.getProperty("gene");
         String zipGenome = configService.getProperty("genome");
         Boolean tmpGenesCkBIsSelected = genesCkBIsSelected;
         Boolean tmpGenomesCkBIsSelected = genomesCkBIsSelected;
 
-        return Futures.transform(parseService.extractOrganismList(inputStream, kingdom.getId()), (Function<List<Organism>, List<Boolean>>) organisms -> {
-            List < String > paths = new ArrayList<>();
+        List < String > paths = new ArrayList<>();
 
-            for (Organism organism : organisms) {
-                String path;
-                if (kingdom.equals(Kingdom.Prokaryotes)) {
-                    path = dataDir
-                            + organism.getProkaryoteGroup().getType()
-                            + "/" + organism.getGroup()
-                            + "/" + organism.getSubGroup();
-                } else {
-                    path = dataDir
-                            + kingdom.getLabel()
-                            + "/" + organism.getGroup()
-                            + "/" + organism.getSubGroup();
-                }
-                organism.setPath(path);
-                paths.add(path);
-
-                String zipPath = null;
-
-                if(tmpGenesCkBIsSelected){
-                    zipPath = zipGene
-                            + kingdom.getLabel()
-                            + "/" + organism.getGroup()
-                            + "/" + organism.getSubGroup()
-                            + "/" + organism.getName();
-                    paths.add(zipPath);
-                }
-
-                if(tmpGenomesCkBIsSelected){
-                    zipPath = zipGenome
-                            + kingdom.getLabel()
-                            + "/" + organism.getGroup()
-                            + "/" + organism.getSubGroup()
-                            + "/" + organism.getName();
-                    paths.add(zipPath);
-                }
+        for (Organism organism : organisms) {
+            String path;
+            if (kingdom.equals(Kingdom.Prokaryotes)) {
+                path = dataDir
+                        + organism.getProkaryoteGroup().getType()
+                        + "/" + organism.getGroup()
+                        + "/" + organism.getSubGroup();
+            } else {
+                path = dataDir
+                        + kingdom.getLabel()
+                        + "/" + organism.getGroup()
+                        + "/" + organism.getSubGroup();
+            }
+            organism.setPath(path);
+            paths.add(path);
+
+            String zipPath = null;
+
+            if(tmpGenesCkBIsSelected){
+                zipPath = zipGene
+                        + kingdom.getLabel()
+                        + "/" + organism.getGroup()
+                        + "/" + organism.getSubGroup()
+                        + "/" + organism.getName();
+                paths.add(zipPath);
             }
-            kingdom.setOrganisms(organisms);
 
-            return fileService.createDirectories(paths);
+            if(tmpGenomesCkBIsSelected){
+                zipPath = zipGenome
+                        + kingdom.getLabel()
+                        + "/" + organism.getGroup()
+                        + "/" + organism.getSubGroup()
+                        + "/" + organism.getName();
+                paths.add(zipPath);
+            }
+        }
+        kingdom.setOrganisms(organisms);
 
-        }, executorService);
+        return fileService.createDirectories(paths);
     }
 
     private ListenableFuture<Kingdom> loadUpdateFile(Kingdom kingdom) {
         return executorService.submit(() -> {
             try {
-                updates.putIfAbsent(kingdom, fileService.readUpdateFile(kingdom));
+                updateJournalService.load(kingdom);
             } catch (IOException e) {
                 e.printStackTrace();
             }
-            updates.putIfAbsent(kingdom, new HashMap<>());
             return kingdom;
         });
     }
 
     /**
      * This is one of the most important methods.
-     * It first loads the update file associated to the kingdom (under "./updates/{kingdomLabel}")
+     * It first loads the update journal associated to the kingdom (under "./updates/{kingdomLabel}")
      * then it retrieves it from the eutils API, then reads the response, then creates or check if the directories exist,
      * then checks if an update is needed, then notifies the user interface through the progressService of the number of organisms to process,
-     * then processes the organisms, and if the later is a success or a failure, writes the current updates file.
+     * then processes the organisms, recording each success in the update journal.
+     * Each step is chained to the previous one, no thread waits for a download or another task.
      */
     private ListenableFuture<Kingdom> createKingdomTree(Kingdom kingdom, String bioProject) {
-        return executorService.submit(() -> {
-            shouldInterrupt = false;
-            Kingdom modifiedKingdom = loadUpdateFile(kingdom).get();
-            String url = generateKingdomGeneListUrl(kingdom);
-            ListenableFuture<HttpResponse> listenableFuture = httpService.get(url);
-            HttpResponse httpResponse = listenableFuture.get();
-            //HttpResponse httpResponse = httpService.get(url).get();
-            InputStream content = httpResponse.getContent();
-            List<Boolean> creationResults = createDirectories(kingdom, content).get();
-
-            // Merge plasmids to prokaryote organisms
+        shouldInterrupt = false;
+        ListenableFuture<List<Organism>> organismsFuture = Futures.transformAsync(loadUpdateFile(kingdom),
+                loadedKingdom -> organismListService.getOrganisms(kingdom), MoreExecutors.directExecutor());
+        ListenableFuture<List<Boolean>> directoriesFuture = Futures.transformAsync(organismsFuture,
+                organisms -> Futures.immediateFuture(createDirectories(kingdom, organisms)), executorService);
+
+        // Merge plasmids to prokaryote organisms
+        ListenableFuture<Integer> plasmidsFuture = Futures.transformAsync(directoriesFuture, creationResults -> {
             if (kingdom.equals(Kingdom.Prokaryotes)) {
-                Kingdom plasmidsKingdom = Kingdom.Plasmids;
-                //Kingdom modifiedPlasmidsKingdom = loadUpdateFile(plasmidsKingdom).get();
-                String plasmidsUrl = generateKingdomGeneListUrl(plasmidsKingdom);
-                HttpResponse httpPlasmidResponse = httpService.get(plasmidsUrl).get();
-                InputStream plasmidsContent = httpPlasmidResponse.getContent();
-                List<Organism> plasmids = parseService.extractOrganismList(plasmidsContent, plasmidsKingdom.getId()).get();
-                List<Organism> fullPlasmids = new ArrayList<>();
-                HashMap<String, Gene> plasmidGenes = new HashMap<String, Gene>();
-                for (Organism plasmid: plasmids) {
-                    for (Tuple<String, String> geneId: plasmid.getGeneIds()) {
-                        Tuple<String, String> newGeneId = new Tuple<>(geneId.getT1(), "plasmid");
-                        plasmid.getGeneIds().remove(geneId);
-                        plasmid.getGeneIds().add(newGeneId);
-                    }
-                    if (!fullPlasmids.contains(plasmid)) {
-                        fullPlasmids.add(plasmid);
-                    } else {
-                        Organism existingPlasmid = fullPlasmids.get(fullPlasmids.indexOf(plasmid));
-                        existingPlasmid.getGeneIds().addAll(plasmid.getGeneIds());
-                    }
-                }
-
-                for (Organism prokaryote: kingdom.getOrganisms()) {
-                    for (Organism plasmid: fullPlasmids) {
-                        if (prokaryote.getName().startsWith(plasmid.getName())) {
-                            prokaryote.getGeneIds().addAll(plasmid.getGeneIds());
-                        }
-                    }
-                }
-
-
-                List<ListenableFuture<Gene>> geneFutures = new ArrayList<ListenableFuture<Gene>>();
-                int j = 0;
-                for (int i = 0; i < fullPlasmids.size(); i++) {
-                    j++;
-                    Organism plasmid = fullPlasmids.get(i);
-                    for (Tuple<String, String> geneId: plasmid.getGeneIds()) {
-                    	if(geneId.getT1().startsWith("NC_")) {
-                    		geneFutures.add(geneService.processGene(plasmidsKingdom, plasmid, geneId));
-                    	}
-                    }
-                    if ((i > 0 && i % PROCESS_STACK_SIZE == 0) || j >= fullPlasmids.size()) {
-                        List<Gene> currentlyProcessedGenes = Futures.allAsList(geneFutures).get();
-                        for (Gene gene: currentlyProcessedGenes) {
-                            plasmidGenes.put(gene.getName(), gene);
-                        }
-                        geneFutures.clear();
-                    }
-                }
-                plasmidGenesMap = plasmidGenes;
+                return processPlasmids(kingdom);
             }
+            return Futures.immediateFuture(0);
+        }, MoreExecutors.directExecutor());
 
+        return Futures.transformAsync(plasmidsFuture, storedPlasmids -> {
             List<Organism> filteredOrganisms = kingdom.getOrganisms()
                     .stream()
                     .filter(organism -> {
@@ -255,7 +214,7 @@ public class KingdomServiceImpl implements IKingdomService {
                             return false;
                         }
                         Date remoteUpdate = organism.getUpdatedDate();
-                        Date localUpdate = updates.get(kingdom).get(organism.getName());
+                        Date localUpdate = updateJournalService.getOrganismUpdate(kingdom, organism.getName());
                         // No local update found
                         return (bioProject == null || (organism.getBioProject() != null && bioProject.equals(organism.getBioProject())))
                                 && (remoteUpdate == null || localUpdate == null || localUpdate.before(remoteUpdate));
@@ -278,154 +237,118 @@ public class KingdomServiceImpl implements IKingdomService {
             programStatsService.setRemainingRequests(programStatsService.getRemainingRequests() + kingdom.getOrganisms().size());
 
 
-            return processKingdom(modifiedKingdom, 0);
-        });
+            return processKingdom(kingdom);
+        }, executorService);
     }
 
-    private Kingdom processKingdom(Kingdom kingdom, int index) throws ExecutionException, InterruptedException {
-        if (!shouldInterrupt) {
-            int nextIndex = index + PROCESS_STACK_SIZE;
-            if (nextIndex > kingdom.getOrganisms().size()) {
-                nextIndex = kingdom.getOrganisms().size();
-            }
-            if (index < kingdom.getOrganisms().size()) {
-                List<ListenableFuture<Organism>> organismFutures = new ArrayList<>();
-                for (Organism organism : kingdom.getOrganisms().subList(index, nextIndex)) {
-                    if (Kingdom.Prokaryotes.equals(kingdom)) {
-                        organismFutures.add(organismService.processOrganism(kingdom, organism, plasmidGenesMap));
-                    } else {
-                        organismFutures.add(organismService.processOrganism(kingdom, organism));
-                    }
+    /**
+     * Downloads the plasmids, adds their replicons to their prokaryotes and processes them, at most repliconWindow
+     * at a time. The counts go to the plasmid store as soon as each replicon is done, and the future gives how many
+     * were stored.
+     */
+    private ListenableFuture<Integer> processPlasmids(Kingdom kingdom) {
+        Kingdom plasmidsKingdom = Kingdom.Plasmids;
+        ListenableFuture<List<Organism>> plasmidsFuture = organismListService.getOrganisms(plasmidsKingdom);
+
+        ListenableFuture<List<Boolean>> storedGenesFuture = Futures.transformAsync(plasmidsFuture, plasmids -> {
+            plasmidStoreService.clear();
+
+            // Plasmids listed several times (same name, group and subgroup) are merged into the first one
+            Map<Organism, Organism> fullPlasmids = new LinkedHashMap<>();
+            for (Organism plasmid: plasmids) {
+                List<Tuple<String, String>> geneIds = new ArrayList<>(plasmid.getGeneIds().size());
+                for (Tuple<String, String> geneId: plasmid.getGeneIds()) {
+                    geneIds.add(new Tuple<>(geneId.getT1(), "plasmid"));
                 }
-
-                ListenableFuture<List<Organism>> currentKingdomFuture = Futures.successfulAsList(organismFutures);
-                currentFutures.put(kingdom, currentKingdomFuture);
-                List<Organism> organisms = currentKingdomFuture.get();
-                for (Organism organism : organisms) {
-                    if (organism != null) {
-                        updates.get(kingdom).put(organism.getName(), new Date());
-                        writeUpdateFile(kingdom);
-                    }
+                Organism existingPlasmid = fullPlasmids.putIfAbsent(plasmid, plasmid);
+                if (existingPlasmid == null) {
+                    plasmid.setGeneIds(geneIds);
+                } else {
+                    existingPlasmid.getGeneIds().addAll(geneIds);
                 }
-
-                return processKingdom(kingdom, index + PROCESS_STACK_SIZE);
             }
-        }
-        return kingdom;
-    }
-
-    public boolean getCreatingExcelParents()
-    {
-        return this.creatingExcelParents;
-    }
 
-    public void createParents(Kingdom kingdom, Map<Integer, List<String>> map, String folderPath, String folderName, int level, int max)
-    {
-        File folder;
-        File[] childrenFolders;
-
-        boolean good=true;
-
-        if(level==0)
-        {
-            folder=new File(folderPath+"/"+folderName);
-            childrenFolders=folder.listFiles();
-            if(childrenFolders != null) {
-                for (File childFolder : childrenFolders) {
-                    if (childFolder.isDirectory()) {
-                        good = false;
-                        break;
-                    }
+            // A plasmid belongs to every prokaryote whose name starts with the name of the plasmid
+            PrefixTrie<Organism> plasmidNames = new PrefixTrie<>();
+            for (Organism plasmid: fullPlasmids.values()) {
+                if (plasmid.getName() != null) {
+                    plasmidNames.put(plasmid.getName(), plasmid);
                 }
             }
-        }
-        else
-        {
-            good=true;
-            folder=new File(map.get(level-1).get(max));
-            childrenFolders=folder.listFiles();
-        }
-
-        if(good) {
-            Organism org=organismService.createOrganism("Total_"+folder.getName(), "", "", "", new Date(), new ArrayList<Tuple<String,String>>(), kingdom.getId());
-
-            if(level==0) {
-                org.setPath(folderPath);
-            } else {
-                org.setPath(folder.getParent());
+            for (Organism prokaryote: kingdom.getOrganisms()) {
+                if (prokaryote.getName() == null) {
+                    continue;
+                }
+                for (Organism plasmid: plasmidNames.prefixesOf(prokaryote.getName())) {
+                    prokaryote.getGeneIds().addAll(plasmid.getGeneIds());
+                }
             }
 
-            Map<String,Gene> mapGene=new Hashtable<String,Gene>();
-            if(childrenFolders == null) {
-                childrenFolders = new File[]{};
-            }
-            for (File excel : childrenFolders) {
-                if (excel.isFile()) // only necessary on level >0
-                {
-                    try {
-                        mapGene = fileService.readWorkbooks(mapGene, excel, 1);
-                        for (String key : mapGene.keySet()) {
-                            try {
-                                statisticsService.computeStatistics(kingdom, org, mapGene.get(key)).get();
-                            } catch (InterruptedException e) {
-                                e.printStackTrace();
-                            } catch (ExecutionException e) {
-                                e.printStackTrace();
-                            }
-                        }
-                    } catch (Exception e) {
 
-                    }
+            List<Tuple<Organism, Tuple<String, String>>> plasmidGeneIds = new ArrayList<>();
+            for (Organism plasmid: fullPlasmids.values()) {
+                for (Tuple<String, String> geneId: plasmid.getGeneIds()) {
+                	if(geneId.getT1().startsWith("NC_")) {
+                		plasmidGeneIds.add(new Tuple<>(plasmid, geneId));
+                	}
                 }
             }
-            organismService.processOrganismWithoutGene(mapGene, kingdom, org);
-        }
-        else
-        {
-            for(File childFolder : childrenFolders)
-            {
-                if(childFolder.isDirectory())
-                {
-                    if(level==0)
-                    {
-                        if(map.get(max+1)==null)
-                        {
-                            List<String> liste=new ArrayList<String>();
-                            liste.add(folder.getPath());
-                            map.put(max+1, liste);
-                        }
-                        else
-                        {
-                            List<String> liste=map.get(max+1);
-                            if(!liste.contains(folder.getPath()))
-                            {
-                                liste.add(folder.getPath());
-                            }
-
+            // The window only keeps whether each replicon was stored, not its counts
+            return SlidingWindow.run(plasmidGeneIds, repliconWindow,
+                    plasmidGeneId -> Futures.transformAsync(geneService.processGene(plasmidsKingdom, plasmidGeneId.getT1(), plasmidGeneId.getT2()), gene -> {
+                        if (gene == null) {
+                            return Futures.immediateFuture(null);
                         }
-                        createParents(kingdom,map,folder.getPath(),childFolder.getName(),0,max+1);
-                    }
-                    else
-                    {
-                        createParents(kingdom,map,folder.getPath(),childFolder.getName(),level,max+1);
-                    }
+                        plasmidStoreService.put(gene);
+                        return Futures.immediateFuture(true);
+                    }, MoreExecutors.directExecutor()),
+                    null, () -> shouldInterrupt);
+        }, executorService);
 
+        return Futures.transformAsync(storedGenesFuture, storedGenes -> {
+            int count = 0;
+            for (Boolean stored: storedGenes) {
+                if (stored != null) {
+                    count++;
                 }
             }
-        }
+            return Futures.immediateFuture(count);
+        }, MoreExecutors.directExecutor());
     }
 
-    private void writeUpdateFile(Kingdom kingdom) {
-        try {
-            fileService.writeUpdateFile(kingdom, updates.get(kingdom));
-        } catch (IOException e) {
-            System.err.println("Unable to write update file for kingdom " + kingdom);
-        }
+    /**
+     * Processes the organisms with at most organismWindow of them in flight, recording each one in the update
+     * journal as soon as it is done.
+     */
+    private ListenableFuture<Kingdom> processKingdom(Kingdom kingdom) {
+        ListenableFuture<List<Organism>> currentKingdomFuture = SlidingWindow.run(kingdom.getOrganisms(), organismWindow, organism -> {
+            return organismService.processOrganism(kingdom, organism);
+        }, (organism, processedOrganism) -> {
+            if (processedOrganism != null) {
+                updateJournalService.recordOrganism(kingdom, processedOrganism.getName(), new Date());
+            }
+        }, () -> shouldInterrupt);
+        currentFutures.put(kingdom, currentKingdomFuture);
+        currentKingdomFuture.addListener(() -> updateJournalService.sync(kingdom), MoreExecutors.directExecutor());
+        return Futures.transformAsync(currentKingdomFuture, organisms -> Futures.immediateFuture(kingdom), MoreExecutors.directExecutor());
+    }
+
+    public boolean getCreatingExcelParents()
+    {
+        return this.creatingExcelParents;
+    }
+
+    @Override
+    public void createParents(Kingdom kingdom) {
+        creatingExcelParents = true;
+        aggregationService.createTotals(kingdom);
+        creatingExcelParents = false;
     }
 
     /**
      * Creates the file trees for the given kingdoms and starts the time estimation.
      * The remaining time is estimated over the 100 last processings.
+     * The state of the pipeline stages is printed once every kingdom is done.
      */
     public ListenableFuture<List<Kingdom>> createKingdomTrees(final List<Kingdom> kingdoms, String bioProject) {
         programStatsService.resetAcquisitionTime();
@@ -437,6 +360,9 @@ public class KingdomServiceImpl implements IKingdomService {
         }
         return Futures.transformAsync(Futures.successfulAsList(acquireFutures), processedKingdoms -> {
             //programStatsService.endAcquisitionTimeEstimation();
+            for (StageMetrics metrics : pipelineService.getMetrics()) {
+                System.out.println(metrics);
+            }
             // We check if something was processed.
             if (processedKingdoms == null) {
                 throw new NothingToProcesssException();
@@ -0,0 +1,36 @@
+package service.impl;
+
+import java.util.Arrays;
+
+/**
+ * Latencies of the last requests to a host, giving a percentile of their distribution.
+ */
+final class LatencyWindow {
+    private final long[] latencies;
+    private int count = 0;
+    private int next = 0;
+
+    LatencyWindow(int size) {
+        this.latencies = new long[size];
+    }
+
+    synchronized void record(long latencyNanos) {
+        latencies[next] = latencyNanos;
+        next = (next + 1) % latencies.length;
+        count = Math.min(count + 1, latencies.length);
+    }
+
+    /**
+     * Returns the latency under which the given fraction of the recorded requests completed, or -1 while fewer than
+     * minCount requests were recorded.
+     */
+    synchronized long percentile(double fraction, int minCount) {
+        if (count < Math.max(1, minCount)) {
+            return -1;
+        }
+        long[] sorted = Arrays.copyOf(latencies, count);
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(fraction * count) - 1;
+        return sorted[Math.max(0, Math.min(count - 1, index))];
+    }
+}
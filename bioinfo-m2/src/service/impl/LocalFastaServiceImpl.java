@@ -0,0 +1,219 @@
+package service.impl;
+
+import com.google.inject.Inject;
+
+import service.interfaces.IConfigService;
+import service.interfaces.ILocalFastaService;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Local mirror of FASTA-CDS files holding several replicons (a file, or every file of a directory).
+ * The files are memory-mapped and indexed on first use: a single pass over the bytes finds the headers and records
+ * the section of each replicon, as in {@link FastaDemultiplexer}, without copying it. Opening a replicon returns a
+ * stream over its section of the mapping, so the sequences are read straight from the page cache.
+ * Files over {@link #MAX_WINDOW} bytes are mapped in several windows, a section crossing windows is read from each.
+ */
+public class LocalFastaServiceImpl implements ILocalFastaService {
+    private static final long MAX_WINDOW = 1L << 30;
+
+    private final Path location;
+    // Sections of each replicon, by accession and by accession without version
+    private Map<String, List<ByteBuffer>> sections;
+    private Map<String, List<ByteBuffer>> unversionedSections;
+
+    /**
+     * Reads the slices of a section one after the other.
+     */
+    private static class SectionInputStream extends InputStream {
+        private final Iterator<ByteBuffer> slices;
+        private ByteBuffer current;
+
+        SectionInputStream(List<ByteBuffer> slices) {
+            this.slices = slices.iterator();
+        }
+
+        private boolean hasRemaining() {
+            while (current == null || !current.hasRemaining()) {
+                if (!slices.hasNext()) {
+                    return false;
+                }
+                // Duplicated so that the section can be read by several streams
+                current = slices.next().duplicate();
+            }
+            return true;
+        }
+
+        @Override
+        public int read() {
+            return hasRemaining() ? current.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (!hasRemaining()) {
+                return -1;
+            }
+            int n = Math.min(len, current.remaining());
+            current.get(b, off, n);
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return current == null ? 0 : current.remaining();
+        }
+    }
+
+    @Inject
+    public LocalFastaServiceImpl(IConfigService configService) {
+        String property = configService.getProperty("localFasta");
+        this.location = property == null || property.trim().isEmpty() ? null : Paths.get(property.trim());
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return location != null;
+    }
+
+    @Override
+    public InputStream open(String accession) throws IOException {
+        if (!isEnabled()) {
+            return null;
+        }
+        List<ByteBuffer> slices;
+        synchronized (this) {
+            if (sections == null) {
+                buildIndex();
+            }
+            slices = sections.get(accession);
+            // Only an accession without version may match another version: a different version of a replicon is
+            // downloaded, never counted in its place
+            if (slices == null && unversioned(accession).equals(accession)) {
+                slices = unversionedSections.get(accession);
+            }
+        }
+        return slices == null ? null : new SectionInputStream(slices);
+    }
+
+    private void buildIndex() throws IOException {
+        long start = System.currentTimeMillis();
+        List<Path> files;
+        if (Files.isDirectory(location)) {
+            try (Stream<Path> paths = Files.list(location)) {
+                files = paths.filter(Files::isRegularFile).filter(path -> !path.getFileName().toString().startsWith(".")).sorted().collect(Collectors.toList());
+            }
+        } else {
+            files = Collections.singletonList(location);
+        }
+
+        Map<String, List<ByteBuffer>> index = new HashMap<>();
+        for (Path file : files) {
+            // A replicon found in several files is taken from the first one
+            for (Map.Entry<String, List<ByteBuffer>> section : indexFile(file).entrySet()) {
+                if (index.putIfAbsent(section.getKey(), section.getValue()) != null) {
+                    System.err.println("Replicon " + section.getKey() + " of " + file + " ignored, already found in another file");
+                }
+            }
+        }
+        Map<String, List<ByteBuffer>> unversionedIndex = new HashMap<>();
+        for (Map.Entry<String, List<ByteBuffer>> section : index.entrySet()) {
+            unversionedIndex.putIfAbsent(unversioned(section.getKey()), section.getValue());
+        }
+        sections = index;
+        unversionedSections = unversionedIndex;
+        System.out.println("Indexed " + index.size() + " local replicons from " + files.size() + " files in " + (System.currentTimeMillis() - start) + " ms");
+    }
+
+    private static String unversioned(String accession) {
+        int dot = accession.lastIndexOf('.');
+        return dot > 0 ? accession.substring(0, dot) : accession;
+    }
+
+    private Map<String, List<ByteBuffer>> indexFile(Path file) throws IOException {
+        List<MappedByteBuffer> windows = new ArrayList<>();
+        long size;
+        // The mappings stay valid once the channel is closed
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            size = channel.size();
+            for (long windowStart = 0; windowStart < size; windowStart += MAX_WINDOW) {
+                windows.add(channel.map(FileChannel.MapMode.READ_ONLY, windowStart, Math.min(MAX_WINDOW, size - windowStart)));
+            }
+        }
+
+        Map<String, List<ByteBuffer>> index = new HashMap<>();
+        StringBuilder header = new StringBuilder(512);
+        String accession = null;
+        long sectionStart = 0;
+        long headerStart = 0;
+        boolean lineStart = true;
+        boolean inHeader = false;
+        long position = 0;
+        for (MappedByteBuffer window : windows) {
+            int limit = window.limit();
+            for (int i = 0; i < limit; i++, position++) {
+                byte b = window.get(i);
+                if (inHeader) {
+                    if (b == '\n') {
+                        inHeader = false;
+                        String headerAccession = FastaDemultiplexer.parseAccession(header.toString());
+                        if (!headerAccession.equals(accession)) {
+                            addSection(index, windows, accession, sectionStart, headerStart);
+                            accession = headerAccession;
+                            sectionStart = headerStart;
+                        }
+                    } else {
+                        header.append((char) (b & 0xFF));
+                    }
+                } else if (lineStart && b == '>') {
+                    inHeader = true;
+                    headerStart = position;
+                    header.setLength(0);
+                    header.append('>');
+                }
+                lineStart = b == '\n';
+            }
+        }
+        if (inHeader) {
+            String headerAccession = FastaDemultiplexer.parseAccession(header.toString());
+            if (!headerAccession.equals(accession)) {
+                addSection(index, windows, accession, sectionStart, headerStart);
+                accession = headerAccession;
+                sectionStart = headerStart;
+            }
+        }
+        addSection(index, windows, accession, sectionStart, size);
+        return index;
+    }
+
+    /**
+     * Adds the bytes from start to end of the file to the section of the replicon, as slices of the windows.
+     */
+    private static void addSection(Map<String, List<ByteBuffer>> index, List<MappedByteBuffer> windows, String accession, long start, long end) {
+        if (accession == null || end <= start) {
+            return;
+        }
+        List<ByteBuffer> slices = index.computeIfAbsent(accession, key -> new ArrayList<>(1));
+        for (int w = (int) (start / MAX_WINDOW); w < windows.size() && (long) w * MAX_WINDOW < end; w++) {
+            long windowStart = w * MAX_WINDOW;
+            ByteBuffer slice = windows.get(w).duplicate();
+            slice.limit((int) (Math.min(end, windowStart + slice.capacity()) - windowStart));
+            slice.position((int) (Math.max(start, windowStart) - windowStart));
+            slices.add(slice.slice());
+        }
+    }
+}
@@ -1,53 +0,0 @@
-package service.impl;
-
-import java.util.LinkedHashMap;
-
-import model.CodingSequence;
-
-abstract class NucleotideHolderService {
-
-    LinkedHashMap<String, Integer> initLinkedHashMap() {
-        LinkedHashMap<String, Integer> hash = new LinkedHashMap<String, Integer>();
-        for (CodingSequence.Nucleotide s0 : CodingSequence.Nucleotide.values()) {
-            for (CodingSequence.Nucleotide s1 : CodingSequence.Nucleotide.values()) {
-                for (CodingSequence.Nucleotide s2 : CodingSequence.Nucleotide.values()) {
-                    hash.put(s0.toString() + s1.toString() + s2.toString(), 0);
-                }
-            }
-        }
-        return hash;
-    }
-
-    LinkedHashMap<String, Double> initLinkedHashMapProba() {
-        LinkedHashMap<String, Double> hash = new LinkedHashMap<String, Double>();
-        for (CodingSequence.Nucleotide s0 : CodingSequence.Nucleotide.values()) {
-            for (CodingSequence.Nucleotide s1 : CodingSequence.Nucleotide.values()) {
-                for (CodingSequence.Nucleotide s2 : CodingSequence.Nucleotide.values()) {
-                    hash.put(s0.toString() + s1.toString() + s2.toString(), 0.0);
-                }
-            }
-        }
-        return hash;
-    }
-
-    LinkedHashMap<String, Integer> initLinkedHashMapDinucleo() {
-        LinkedHashMap<String, Integer> hash = new LinkedHashMap<String, Integer>();
-        for (CodingSequence.Nucleotide s0 : CodingSequence.Nucleotide.values()) {
-            for (CodingSequence.Nucleotide s1 : CodingSequence.Nucleotide.values()) {
-                hash.put(s0.toString() + s1.toString(), 0);
-            }
-        }
-        return hash;
-    }
-
-    LinkedHashMap<String, Double> initLinkedHashMapDinucleoProba() {
-        LinkedHashMap<String, Double> hash = new LinkedHashMap<String, Double>();
-        for (CodingSequence.Nucleotide s0 : CodingSequence.Nucleotide.values()) {
-            for (CodingSequence.Nucleotide s1 : CodingSequence.Nucleotide.values()) {
-                hash.put(s0.toString() + s1.toString(), 0.0);
-            }
-        }
-        return hash;
-    }
-
-}
@@ -0,0 +1,219 @@
+package service.impl;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.inject.Inject;
+import com.google.inject.name.Named;
+
+import model.Kingdom;
+import model.Organism;
+import service.interfaces.*;
+
+import java.io.*;
+import java.nio.file.*;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Organism lists of the kingdoms, read from the Genome2BE reports.
+ * Each report is kept gzipped under the "reports" directory with the ETag and Last-Modified validators of its
+ * response, and is only downloaded again when the server answers that it changed; an unchanged report that was
+ * already parsed in this session is not parsed again. Bacteria and Archaea are partitions of the prokaryotes
+ * report, which is downloaded and parsed once for the three kingdoms.
+ */
+public class OrganismListServiceImpl implements IOrganismListService {
+    private static final String REPORT_EXTENSION = ".tsv.gz";
+    private static final String VALIDATORS_EXTENSION = ".validators";
+    private static final String TEMPORARY_EXTENSION = ".tmp";
+
+    private final IHttpService httpService;
+    private final IParseService parseService;
+    private final IKingdomService kingdomService;
+    private final IOrganismService organismService;
+    private final ListeningExecutorService executorService;
+    private final Path directory;
+    // Report being loaded and latest parsed report, by kingdom of the report
+    private final Map<Kingdom, ListenableFuture<ParsedReport>> loadingReports = new HashMap<>();
+    private final Map<Kingdom, ParsedReport> parsedReports = new HashMap<>();
+
+    private static class ParsedReport {
+        final Properties validators;
+        final List<Organism> organisms;
+
+        ParsedReport(Properties validators, List<Organism> organisms) {
+            this.validators = validators;
+            this.organisms = organisms;
+        }
+    }
+
+    @Inject
+    public OrganismListServiceImpl(IHttpService httpService, IParseService parseService, IKingdomService kingdomService, IOrganismService organismService, @Named("NetworkStage") ListeningExecutorService listeningExecutorService, IConfigService configService) {
+        this.httpService = httpService;
+        this.parseService = parseService;
+        this.kingdomService = kingdomService;
+        this.organismService = organismService;
+        this.executorService = listeningExecutorService;
+        this.directory = Paths.get(configService.getProperty("reports"));
+    }
+
+    @Override
+    public ListenableFuture<List<Organism>> getOrganisms(Kingdom kingdom) {
+        return Futures.transformAsync(loadReport(getReportKingdom(kingdom)),
+                report -> Futures.immediateFuture(partition(kingdom, report.organisms)), MoreExecutors.directExecutor());
+    }
+
+    private static Kingdom getReportKingdom(Kingdom kingdom) {
+        if (Kingdom.Bacteria.equals(kingdom) || Kingdom.Archaea.equals(kingdom)) {
+            return Kingdom.Prokaryotes;
+        }
+        return kingdom;
+    }
+
+    /**
+     * Returns copies of the organisms of the report that belong to the kingdom.
+     */
+    private List<Organism> partition(Kingdom kingdom, List<Organism> organisms) {
+        boolean whole = getReportKingdom(kingdom) == kingdom;
+        List<Organism> partition = new ArrayList<>();
+        for (Organism organism : organisms) {
+            if (!whole && (organism.getProkaryoteGroup() == null || !kingdom.getLabel().equals(organism.getProkaryoteGroup().getType()))) {
+                continue;
+            }
+            Organism copy = organismService.createOrganism(organism.getName(), organism.getBioProject(), organism.getGroup(), organism.getSubGroup(),
+                    organism.getUpdatedDate(), new ArrayList<>(organism.getGeneIds()), kingdom.getId());
+            if (Kingdom.Prokaryotes.equals(kingdom)) {
+                copy.setProkaryoteGroup(organism.getProkaryoteGroup());
+            }
+            partition.add(copy);
+        }
+        return partition;
+    }
+
+    /**
+     * Revalidates the cached report, a load already in progress is shared.
+     */
+    private synchronized ListenableFuture<ParsedReport> loadReport(Kingdom reportKingdom) {
+        ListenableFuture<ParsedReport> loading = loadingReports.get(reportKingdom);
+        if (loading != null) {
+            return loading;
+        }
+
+        Path reportPath = directory.resolve(reportKingdom.getId() + REPORT_EXTENSION);
+        Properties validators = readValidators(reportKingdom, reportPath);
+        String url = kingdomService.generateKingdomGeneListUrl(reportKingdom);
+        ListenableFuture<HttpResult> responseFuture = httpService.getIfModified(url, validators.getProperty("etag"), validators.getProperty("lastModified"));
+
+        ListenableFuture<ParsedReport> reportFuture = Futures.transformAsync(responseFuture, httpResult -> {
+            if (httpResult.getStatusCode() == 304) {
+                ParsedReport parsedReport = getParsedReport(reportKingdom);
+                if (parsedReport != null && parsedReport.validators.equals(validators)) {
+                    return Futures.immediateFuture(parsedReport);
+                }
+                return parseReport(reportKingdom, reportPath, validators);
+            }
+            Properties newValidators = writeReport(reportKingdom, reportPath, httpResult);
+            return parseReport(reportKingdom, reportPath, newValidators);
+        }, executorService);
+
+        // The previous download of the report is still better than no list
+        reportFuture = Futures.catchingAsync(reportFuture, Exception.class, exception -> {
+            if (!Files.exists(reportPath)) {
+                return Futures.immediateFailedFuture(exception);
+            }
+            System.err.println("Unable to revalidate the " + reportKingdom.getLabel() + " report, using the cached one");
+            exception.printStackTrace();
+            return parseReport(reportKingdom, reportPath, validators);
+        }, executorService);
+
+        loadingReports.put(reportKingdom, reportFuture);
+        reportFuture.addListener(() -> {
+            synchronized (this) {
+                loadingReports.remove(reportKingdom);
+            }
+        }, MoreExecutors.directExecutor());
+        return reportFuture;
+    }
+
+    private synchronized ParsedReport getParsedReport(Kingdom reportKingdom) {
+        return parsedReports.get(reportKingdom);
+    }
+
+    private ListenableFuture<ParsedReport> parseReport(Kingdom reportKingdom, Path reportPath, Properties validators) throws IOException {
+        InputStream content = new GZIPInputStream(new BufferedInputStream(Files.newInputStream(reportPath)), 65536);
+        return Futures.transformAsync(parseService.extractOrganismList(content, reportKingdom.getId()), organisms -> {
+            ParsedReport parsedReport = new ParsedReport(validators, organisms);
+            synchronized (this) {
+                parsedReports.put(reportKingdom, parsedReport);
+            }
+            return Futures.immediateFuture(parsedReport);
+        }, MoreExecutors.directExecutor());
+    }
+
+    /**
+     * Returns the validators of the cached report, without any when the report is not cached.
+     * A server that sends no validator is asked for changes since the download of the report.
+     */
+    private Properties readValidators(Kingdom reportKingdom, Path reportPath) {
+        Properties validators = new Properties();
+        if (!Files.exists(reportPath)) {
+            return validators;
+        }
+        Path validatorsPath = directory.resolve(reportKingdom.getId() + VALIDATORS_EXTENSION);
+        if (Files.exists(validatorsPath)) {
+            try (InputStream inputStream = Files.newInputStream(validatorsPath)) {
+                validators.load(inputStream);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        if (validators.isEmpty()) {
+            try {
+                ZonedDateTime downloaded = Files.getLastModifiedTime(reportPath).toInstant().atZone(ZoneOffset.UTC);
+                validators.setProperty("lastModified", DateTimeFormatter.RFC_1123_DATE_TIME.format(downloaded));
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        return validators;
+    }
+
+    /**
+     * Stores the downloaded report and its validators, each file is replaced once complete.
+     */
+    private Properties writeReport(Kingdom reportKingdom, Path reportPath, HttpResult httpResult) throws IOException {
+        Files.createDirectories(directory);
+        Path temporary = Files.createTempFile(directory, reportKingdom.getId(), TEMPORARY_EXTENSION);
+        try (InputStream content = httpResult.getContent();
+             OutputStream outputStream = new GZIPOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)), 65536)) {
+            byte[] buffer = new byte[65536];
+            int read;
+            while ((read = content.read(buffer)) != -1) {
+                outputStream.write(buffer, 0, read);
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(temporary);
+            throw e;
+        }
+        Files.move(temporary, reportPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        Properties validators = new Properties();
+        if (httpResult.getHeader("ETag") != null) {
+            validators.setProperty("etag", httpResult.getHeader("ETag"));
+        }
+        if (httpResult.getHeader("Last-Modified") != null) {
+            validators.setProperty("lastModified", httpResult.getHeader("Last-Modified"));
+        }
+        Path validatorsTemporary = Files.createTempFile(directory, reportKingdom.getId(), TEMPORARY_EXTENSION);
+        try (OutputStream outputStream = Files.newOutputStream(validatorsTemporary)) {
+            validators.store(outputStream, reportKingdom.getLabel() + " report");
+        }
+        Files.move(validatorsTemporary, directory.resolve(reportKingdom.getId() + VALIDATORS_EXTENSION), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return readValidators(reportKingdom, reportPath);
+    }
+}
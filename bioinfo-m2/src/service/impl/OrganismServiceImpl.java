@@ -3,7 +3,9 @@ package service.impl;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
 import com.google.inject.Inject;
+import com.google.inject.name.Named;
 
 import model.Gene;
 import model.Kingdom;
@@ -11,29 +13,43 @@ import model.Organism;
 import model.Sum;
 import service.interfaces.*;
 
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.apache.poi.ss.usermodel.Workbook;
 
+import java.io.File;
+import java.io.IOException;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.time.ZonedDateTime;
 import java.util.*;
 
-public class OrganismServiceImpl extends NucleotideHolderService implements IOrganismService {
+public class OrganismServiceImpl implements IOrganismService {
     private final IGeneService geneService;
-    private final ListeningExecutorService executorService;
+    private final ListeningExecutorService parseStage;
+    private final ListeningExecutorService writeStage;
     private final IProgressService progressService;
     private final IFileService fileService;
     private final IProgramStatsService programStatsService;
     private final IStatisticsService statisticsService;
+    private final IResultStoreService resultStoreService;
+    private final IAggregationService aggregationService;
+    private final IUpdateJournalService updateJournalService;
+    private final IPlasmidStoreService plasmidStoreService;
+    private final boolean excelOutput;
 
     @Inject
-    public OrganismServiceImpl(IGeneService geneService, ListeningExecutorService listeningExecutorService, IProgressService progressService, IFileService fileService, IProgramStatsService programStatsService, IStatisticsService statisticsService) {
+    public OrganismServiceImpl(IGeneService geneService, @Named("ParseStage") ListeningExecutorService parseStage, @Named("WriteStage") ListeningExecutorService writeStage, IProgressService progressService, IFileService fileService, IProgramStatsService programStatsService, IStatisticsService statisticsService, IResultStoreService resultStoreService, IAggregationService aggregationService, IUpdateJournalService updateJournalService, IPlasmidStoreService plasmidStoreService, IConfigService configService) {
         this.geneService = geneService;
-        this.executorService = listeningExecutorService;
+        this.parseStage = parseStage;
+        this.writeStage = writeStage;
         this.progressService = progressService;
         this.fileService = fileService;
         this.programStatsService = programStatsService;
         this.statisticsService = statisticsService;
+        this.resultStoreService = resultStoreService;
+        this.aggregationService = aggregationService;
+        this.updateJournalService = updateJournalService;
+        this.plasmidStoreService = plasmidStoreService;
+        this.excelOutput = Boolean.parseBoolean(configService.getProperty("excelOutput"));
     }
 
     @Override
@@ -46,80 +62,100 @@ public class OrganismServiceImpl extends NucleotideHolderService implements IOrg
         return new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
     }
     
+    /**
+     * Writes the sums of the given genes without waiting on the executor, so that many of them can be started at once.
+     */
     @Override
     public ListenableFuture<Organism> processOrganismWithoutGene(Map<String,Gene> genes, Kingdom kingdom, Organism organism) {
-        return executorService.submit(() -> {
-        	HashMap<String, Sum> organismSums = new HashMap<>();
-            XSSFWorkbook workbook = fileService.createWorkbook();
-            
-            for(String key : genes.keySet())
-            {
-            	Gene gene=genes.get(key);
-            	if (gene != null) {
-                    String type = gene.getType();
-                    if (type == null) {
-                        type = "replicon";
-                    }
-                    organismSums.putIfAbsent(type, createSum(gene.getType(), organism.getPath(), 0, 0));
-                    Sum sum = organismSums.get(gene.getType());
-                    statisticsService.computeSum(kingdom, organism, sum, gene).get();
-                }
+        HashMap<String, Sum> organismSums = new HashMap<>();
+        for (Gene gene: genes.values()) {
+            if (gene != null) {
+                organismSums.computeIfAbsent(gene.getType(), type -> createSum(type, organism.getPath(), 0, 0)).addCounts(gene);
             }
-            
-            for (Map.Entry<String, Sum> organismSumEntry: organismSums.entrySet()) {
-                organismSumEntry.setValue(statisticsService.computeProbabilitiesFromSum(organism, organismSumEntry.getValue()).get());
+        }
+
+        List<ListenableFuture<Sum>> sumFutures = new ArrayList<>();
+        for (Sum sum: organismSums.values()) {
+            sumFutures.add(statisticsService.computeProbabilitiesFromSum(organism, sum));
+        }
+
+        return Futures.transformAsync(Futures.allAsList(sumFutures), sums -> {
+            resultStoreService.write(organism.getPath(), organism.getName(), organismSums);
+
+            if (excelOutput) {
+                Workbook workbook = fileService.createWorkbook();
+                fileService.fillWorkbookSum(organism, organismSums, workbook);
+                fileService.writeWorkbook(workbook, organism.getPath(), organism.getName());
             }
-            fileService.fillWorkbookSum(organism, organismSums, workbook);
-            
-            fileService.writeWorkbook(workbook, organism.getPath(), organism.getName());
 
             System.out.println(organism.getName());
 
-            return organism;
-        });
+            return Futures.immediateFuture(organism);
+        }, writeStage);
     }
 
+    /**
+     * The previous results are read and the organism is written on the write stage, its replicons are summed on the
+     * parse stage. No thread waits for the replicons.
+     * The plasmids of a prokaryote are taken from the plasmid store, filled before the prokaryotes are processed.
+     */
+    @Override
     public ListenableFuture<Organism> processOrganism(Kingdom kingdom, Organism organism) {
-        return processOrganism(kingdom, organism, null);
-    }
+        HashMap<String, Sum> organismSums = new HashMap<>();
+        Map<String, Gene> replicons = new LinkedHashMap<>();
+        List<String> downloadedReplicons = new ArrayList<>();
 
-    @Override
-    public ListenableFuture<Organism> processOrganism(Kingdom kingdom, Organism organism, HashMap<String, Gene> plasmidGenesMap) {
-        return executorService.submit(() -> {
-            HashMap<String, Sum> organismSums = new HashMap<>();
-            List<Tuple<String, String>> geneIds = organism.getGeneIds();
+        ListenableFuture<List<Gene>> genesFuture = Futures.transformAsync(writeStage.submit(() -> readPreviousReplicons(kingdom, organism)), previousReplicons -> {
             List<ListenableFuture<Gene>> geneFutures = new ArrayList<>();
-            for (Tuple<String, String> geneId: geneIds) {
+            for (Tuple<String, String> geneId: organism.getGeneIds()) {
             	if(geneId.getT1().startsWith("NC_")) {
-	                if (Kingdom.Prokaryotes.equals(kingdom) && plasmidGenesMap != null) {
-	                    geneFutures.add(executorService.submit(() -> plasmidGenesMap.get(geneId.getT1())));
+	                Gene plasmidGene = Kingdom.Prokaryotes.equals(kingdom) ? plasmidStoreService.get(geneId.getT1(), organism.getPath()) : null;
+	                if (plasmidGene != null) {
+	                    geneFutures.add(statisticsService.computeStatistics(kingdom, organism, plasmidGene));
+	                } else if (previousReplicons.containsKey(geneId.getT1())) {
+	                    geneFutures.add(statisticsService.computeStatistics(kingdom, organism, previousReplicons.get(geneId.getT1())));
 	                } else {
 	                    geneFutures.add(geneService.processGene(kingdom, organism, geneId));
+	                    downloadedReplicons.add(geneId.getT1());
 	                }
             	}
             }
-            List<Gene> genes = Futures.successfulAsList(geneFutures).get();
+            return Futures.successfulAsList(geneFutures);
+        }, MoreExecutors.directExecutor());
 
-            XSSFWorkbook workbook = fileService.createWorkbook();
+        ListenableFuture<List<Sum>> sumsFuture = Futures.transformAsync(genesFuture, genes -> {
             for (Gene gene: genes) {
                 if (gene != null) {
-                    String type = gene.getType();
-                    if (type == null) {
-                        type = "replicon";
-                    }
-                    organismSums.putIfAbsent(type, createSum(gene.getType(), organism.getPath(), 0, 0));
-                    Sum sum = organismSums.get(gene.getType());
-                    statisticsService.computeSum(kingdom, organism, sum, gene).get();
-                    fileService.fillWorkbook(organism, gene, workbook);
+                    organismSums.computeIfAbsent(gene.getType(), type -> createSum(type, organism.getPath(), 0, 0)).addCounts(gene);
+                    replicons.put(gene.getName(), gene);
                 }
             }
 
-            for (Map.Entry<String, Sum> organismSumEntry: organismSums.entrySet()) {
-                organismSumEntry.setValue(statisticsService.computeProbabilitiesFromSum(organism, organismSumEntry.getValue()).get());
+            List<ListenableFuture<Sum>> sumFutures = new ArrayList<>();
+            for (Sum sum: organismSums.values()) {
+                sumFutures.add(statisticsService.computeProbabilitiesFromSum(organism, sum));
+            }
+            return Futures.allAsList(sumFutures);
+        }, parseStage);
+
+        return Futures.transformAsync(sumsFuture, sums -> {
+            resultStoreService.write(organism.getPath(), organism.getName(), replicons);
+            aggregationService.addOrganism(organism, organismSums);
+            // Only once their counts are stored
+            for (String accession: downloadedReplicons) {
+                if (replicons.containsKey(accession)) {
+                    updateJournalService.recordReplicon(kingdom, accession, new Date());
+                }
             }
-            fileService.fillWorkbookSum(organism, organismSums, workbook);
 
-            fileService.writeWorkbook(workbook, organism.getPath(), organism.getName());
+            if (excelOutput) {
+                Workbook workbook = fileService.createWorkbook();
+                for (Gene gene: replicons.values()) {
+                    fileService.fillWorkbook(organism, gene, workbook);
+                }
+                fileService.fillWorkbookSum(organism, organismSums, workbook);
+                fileService.writeWorkbook(workbook, organism.getPath(), organism.getName());
+            }
 
             programStatsService.addDate(ZonedDateTime.now());
             programStatsService.setRemainingRequests(programStatsService.getRemainingRequests());
@@ -128,32 +164,38 @@ public class OrganismServiceImpl extends NucleotideHolderService implements IOrg
 
             System.out.print(organism.getName());
 
-            return organism;
-        });
+            return Futures.immediateFuture(organism);
+        }, writeStage);
     }
 
-    private Sum createSum(final String type, final String path, final int totalDinucleotides, final int totalTrinucleotides) {
-
-        Sum sum = new Sum(type, path, totalDinucleotides, totalTrinucleotides);
-
-        sum.setTrinuStatPhase0(initLinkedHashMap());
-        sum.setTrinuStatPhase1(initLinkedHashMap());
-        sum.setTrinuStatPhase2(initLinkedHashMap());
-
-        sum.setTrinuProbaPhase0(initLinkedHashMapProba());
-        sum.setTrinuProbaPhase1(initLinkedHashMapProba());
-        sum.setTrinuProbaPhase2(initLinkedHashMapProba());
-
-        sum.setTrinuPrefPhase0(initLinkedHashMap());
-        sum.setTrinuPrefPhase2(initLinkedHashMap());
-        sum.setTrinuPrefPhase1(initLinkedHashMap());
-
-        sum.setDinuStatPhase0(initLinkedHashMapDinucleo());
-        sum.setDinuStatPhase1(initLinkedHashMapDinucleo());
-
-        sum.setDinuProbaPhase0(initLinkedHashMapDinucleoProba());
-        sum.setDinuProbaPhase1(initLinkedHashMapDinucleoProba());
+    /**
+     * Returns the replicons of the previous results of the organism that the update journal knows, by accession.
+     * The accessions are versioned, so a known one has not changed since it was counted.
+     */
+    private Map<String, Gene> readPreviousReplicons(Kingdom kingdom, Organism organism) {
+        Map<String, Gene> previousReplicons = new HashMap<>();
+        boolean known = false;
+        for (Tuple<String, String> geneId: organism.getGeneIds()) {
+            known |= updateJournalService.getRepliconUpdate(kingdom, geneId.getT1()) != null;
+        }
+        File storeFile = resultStoreService.getStoreFile(organism.getPath(), organism.getName());
+        if (!known || !storeFile.exists()) {
+            return previousReplicons;
+        }
+        try {
+            for (Gene gene: resultStoreService.read(storeFile)) {
+                if (updateJournalService.getRepliconUpdate(kingdom, gene.getName()) != null) {
+                    previousReplicons.put(gene.getName(), gene);
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Unable to read the previous results of " + organism.getName());
+            e.printStackTrace();
+        }
+        return previousReplicons;
+    }
 
-        return sum;
+    private Sum createSum(final String type, final String path, final int totalDinucleotides, final int totalTrinucleotides) {
+        return new Sum(type, path, totalDinucleotides, totalTrinucleotides);
     }
 }
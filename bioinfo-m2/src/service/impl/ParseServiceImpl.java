@@ -1,36 +1,40 @@
 package service.impl;
 
+import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.ListeningExecutorService;
 import com.google.inject.Inject;
+import com.google.inject.name.Named;
 
 import model.*;
 import service.exception.EmptyFileException;
+import service.interfaces.CdsConsumer;
 import service.interfaces.IConfigService;
 import service.interfaces.IKingdomService;
 import service.interfaces.IOrganismService;
 import service.interfaces.IParseService;
 import service.interfaces.Tuple;
 
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileWriter;
-import java.io.IOException;
+import java.io.FileOutputStream;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.net.SocketException;
+import java.io.OutputStream;
 import java.text.DateFormat;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.*;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
 
 public class ParseServiceImpl implements IParseService {
+    private static final int CHUNK_SIZE = 65536;
     private final IOrganismService organismService;
     private final ListeningExecutorService executorService;
+    private final ListeningExecutorService networkStage;
     private final IConfigService configService;
     private final IKingdomService kingdomService;
 
@@ -49,170 +53,95 @@ public class ParseServiceImpl implements IParseService {
     }
 
     @Inject
-    public ParseServiceImpl(IOrganismService organismService, ListeningExecutorService listeningExecutorService, IConfigService configService , IKingdomService kingdomService) {
+    public ParseServiceImpl(IOrganismService organismService, @Named("ParseStage") ListeningExecutorService listeningExecutorService, @Named("NetworkStage") ListeningExecutorService networkStage, IConfigService configService , IKingdomService kingdomService) {
         this.organismService = organismService;
         this.executorService = listeningExecutorService;
+        this.networkStage = networkStage;
         this.configService = configService;
         this.kingdomService = kingdomService;
     }
 
-    private static boolean checkLocator(String locator) {
-        if (locator == null) {
-            return false;
-        }
-        String[] indexes = locator.split("\\.\\.");
-        return indexes.length == 2 && Integer.parseInt(indexes[0]) < Integer.parseInt(indexes[1]);
-    }
-
-    private static boolean checkSequence(String sequence) {
-        return sequence != null
-                && (sequence.length() > 0)
-                && (sequence.length() % 3 == 0)
-                && CodingSequence.InitCodon.contains(sequence.substring(0, 3))
-                && CodingSequence.StopCodon.contains(sequence.substring(sequence.length() - 3))
-                && !Pattern.compile(CodingSequence.REGEX_ATGC).matcher(sequence).find();
-    }
-
     /**
-     * Extracts the sequences from a given input stream for the given gene.
+     * Streams the CDS of the given input stream for the given gene: every valid sequence is handed to the consumer
+     * as soon as it is read, and the CDS counters of the gene are updated.
+     * The stream (a response body still downloading, the cache file being written) is read on the network stage,
+     * the parse stage only scans the chunks already read, so a slow download never holds a parse thread. Two chunks
+     * alternate: the next one is read while the previous one is scanned, and is only handed over once it is done.
      */
     @Override
-    public ListenableFuture<List<String>> extractSequences(final InputStream inputStream, Gene gene) {
-        return executorService.submit(() -> {
-            List<String> sequences = new ArrayList<String>();
-            String line;
-            boolean running;
-
+    public ListenableFuture<Gene> extractSequences(final InputStream inputStream, Gene gene, CdsConsumer consumer) {
+        return Futures.dereference(networkStage.submit(() -> {
             System.out.println("Extracting : " + gene.getName());
 
-            //Gene
-            FileWriter fwGene = null;
-            BufferedWriter bwGene = null;
-            String zipGenePath = configService.getProperty("gene");
-            //Genome
-            FileWriter fwGenome = null;
-            BufferedWriter bwGenome = null;
-            String zipGenomePath = configService.getProperty("genome");
-
+            List<OutputStream> copies = new ArrayList<>();
             String[] explodePath = (gene.getPath() != null) ? gene.getPath().split("/"): null;
 
+            //Gene
             if(kingdomService.getGenesCkBIsSelected() && gene.getPath() != null){
+                String zipGenePath = configService.getProperty("gene");
                 for(int i = 2; i < explodePath.length; i++){
                     zipGenePath += explodePath[i] + "/";
                 }
-
-                fwGene = new FileWriter(new File(zipGenePath + gene.getName() + ".txt"));
-                bwGene =  new BufferedWriter(fwGene);
+                copies.add(new BufferedOutputStream(new FileOutputStream(new File(zipGenePath + gene.getName() + ".txt"))));
             }
-            
+
+            //Genome
             if(kingdomService.getGenomesCkBIsSelected() && gene.getPath() != null){
+                String zipGenomePath = configService.getProperty("genome");
                 for(int i = 2; i < explodePath.length; i++){
-                	zipGenomePath += explodePath[i] + "/";
+                    zipGenomePath += explodePath[i] + "/";
                 }
-
-                fwGenome = new FileWriter(new File(zipGenomePath + gene.getName() + ".txt"));
-                bwGenome =  new BufferedWriter(fwGenome);
+                copies.add(new BufferedOutputStream(new FileOutputStream(new File(zipGenomePath + gene.getName() + ".txt"))));
             }
 
-            boolean fileIsEmpty = true;
-            BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream));
-            while ((line = reader.readLine()) != null) {
-                if (!line.equals("")) {
-                    fileIsEmpty = false;
-                }
-                if(kingdomService.getGenesCkBIsSelected() && gene.getPath() != null){
-                    bwGene.write(line);
-                    bwGene.newLine();
-                }
-
-                if(kingdomService.getGenomesCkBIsSelected() && gene.getPath() != null){
-                    bwGenome.write(line);
-                    bwGenome.newLine();
-                }
-
-                if (line.startsWith(CodingSequence.START_CDS_INFO)) {
-                    Pattern p = Pattern.compile(CodingSequence.REGEX_COMPLETE);
-                    Matcher m = p.matcher(line);
-
-                    if (m.find()) {
-                        String s = m.group();
-                        p = Pattern.compile(CodingSequence.REGEX_LOCATOR);
-                        m = p.matcher(s);
-                        boolean locators_ok = true;
-                        while (m.find() && locators_ok) {
-                            locators_ok = checkLocator(m.group());
-                        }
-                        if (locators_ok) {
-                            String sequence = "", line2 = null;
-
-                            running = true;
-                            while (running) {
-                                reader.mark(1);
-                                int temp = reader.read();
-                                if (temp == -1) {
-                                    running = false;
-                                } else {
-                                    reader.reset();
-                                    if (temp == CodingSequence.START_CDS_INFO.charAt(0)) {
-                                        running = false;
-                                    } else {
-                                        try {
-                                            line2 = reader.readLine();
-
-                                            if(kingdomService.getGenesCkBIsSelected()){
-                                                bwGene.write(line2);
-                                                bwGene.newLine();
-                                            }
-
-                                            if(kingdomService.getGenomesCkBIsSelected()){
-                                                bwGenome.write(line2);
-                                                bwGenome.newLine();
-                                            }
-
-                                        } catch (SocketException e) {
-                                            e.printStackTrace();
-                                        } catch (IOException e) {
-                                            running = false;
-                                        }
-                                        if (line2 == null) {
-                                            running = false;
-                                        } else {
-                                            sequence += line2;
-                                        }
-                                    }
-                                }
-                            }
-
-                            if (checkSequence(sequence)) {
-                                gene.setTotalCds(gene.getTotalCds() + 1);
-
-                                sequences.add(sequence);
-                            } else {
-                                gene.setTotalCds(gene.getTotalCds() + 1);
-                                gene.setTotalUnprocessedCds(gene.getTotalUnprocessedCds() + 1);
-                            }
-                        }
+            CdsScanner scanner = new CdsScanner(consumer, Collections.emptyList());
+            byte[][] chunks = {new byte[CHUNK_SIZE], new byte[CHUNK_SIZE]};
+            Future<?> scan = Futures.immediateFuture(null);
+            try {
+                int index = 0;
+                int read;
+                while ((read = inputStream.read(chunks[index])) != -1) {
+                    byte[] chunk = chunks[index];
+                    int length = read;
+                    for (OutputStream copy : copies) {
+                        copy.write(chunk, 0, length);
                     }
+                    awaitScan(scan);
+                    scan = executorService.submit(() -> {
+                        scanner.feed(chunk, 0, length);
+                        return null;
+                    });
+                    index = 1 - index;
+                }
+                awaitScan(scan);
+            } finally {
+                inputStream.close();
+                for (OutputStream copy : copies) {
+                    copy.close();
                 }
             }
 
-            inputStream.close();
-
-            // If the file was empty, we throw an exception.
-            if (fileIsEmpty) {
-                throw new EmptyFileException();
-            }
+            return executorService.submit(() -> {
+                scanner.finish();
+                // If the file was empty, we throw an exception.
+                if (scanner.isEmpty()) {
+                    throw new EmptyFileException();
+                }
 
-            if(kingdomService.getGenesCkBIsSelected()){
-                bwGene.close();
-            }
+                gene.setTotalCds(gene.getTotalCds() + scanner.getTotalCds());
+                gene.setTotalUnprocessedCds(gene.getTotalUnprocessedCds() + (int) scanner.getUnprocessedCds());
 
-            if(kingdomService.getGenomesCkBIsSelected()){
-                bwGenome.close();
-            }
+                return gene;
+            });
+        }));
+    }
 
-            return sequences;
-        });
+    private static void awaitScan(Future<?> scan) throws Exception {
+        try {
+            scan.get();
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+        }
     }
 
     /**
@@ -0,0 +1,29 @@
+package service.impl;
+
+import com.google.inject.Inject;
+import com.google.inject.name.Named;
+
+import service.interfaces.IPipelineService;
+import service.interfaces.StageMetrics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class PipelineServiceImpl implements IPipelineService {
+    private final List<StageExecutor> stages;
+
+    @Inject
+    public PipelineServiceImpl(@Named("NetworkStage") StageExecutor networkStage, @Named("ParseStage") StageExecutor parseStage, @Named("WriteStage") StageExecutor writeStage) {
+        this.stages = Arrays.asList(networkStage, parseStage, writeStage);
+    }
+
+    @Override
+    public List<StageMetrics> getMetrics() {
+        List<StageMetrics> metrics = new ArrayList<>();
+        for (StageExecutor stage : stages) {
+            metrics.add(stage.getMetrics());
+        }
+        return metrics;
+    }
+}
@@ -0,0 +1,185 @@
+package service.impl;
+
+import com.google.inject.Inject;
+
+import model.CodonIndex;
+import model.Gene;
+import service.interfaces.IConfigService;
+import service.interfaces.IGeneService;
+import service.interfaces.IPlasmidStoreService;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Counts of the plasmid replicons of a Prokaryotes run, kept until their hosts are processed.
+ * Every replicon is written as a fixed-size record of primitive counts to a memory-mapped file, which grows by
+ * segments; only the counts of the most recently used replicons are kept decoded in memory. The file is only created
+ * by the first replicon stored.
+ *
+ * Record layout (big endian): trinucleotide counts (3 phases x 64 longs), trinucleotide preferences (3 phases x 64
+ * ints), dinucleotide counts (2 phases x 16 longs), then the totals (see TOTAL_* offsets).
+ */
+public class PlasmidStoreServiceImpl implements IPlasmidStoreService {
+    private static final int TRINU_STAT_OFFSET = 0;
+    private static final int TRINU_PREF_OFFSET = TRINU_STAT_OFFSET + 3 * CodonIndex.TRINUCLEOTIDE_COUNT * Long.BYTES;
+    private static final int DINU_STAT_OFFSET = TRINU_PREF_OFFSET + 3 * CodonIndex.TRINUCLEOTIDE_COUNT * Integer.BYTES;
+    private static final int TOTAL_CDS_OFFSET = DINU_STAT_OFFSET + 2 * CodonIndex.DINUCLEOTIDE_COUNT * Long.BYTES;
+    private static final int TOTAL_TRINUCLEOTIDE_OFFSET = TOTAL_CDS_OFFSET + Long.BYTES;
+    private static final int TOTAL_DINUCLEOTIDE_OFFSET = TOTAL_TRINUCLEOTIDE_OFFSET + Long.BYTES;
+    private static final int TOTAL_UNPROCESSED_CDS_OFFSET = TOTAL_DINUCLEOTIDE_OFFSET + Long.BYTES;
+    private static final int TOTAL_PREF_TRINU_OFFSET = TOTAL_UNPROCESSED_CDS_OFFSET + Integer.BYTES;
+    private static final int RECORD_SIZE = TOTAL_PREF_TRINU_OFFSET + 3 * Integer.BYTES;
+    private static final int SEGMENT_RECORDS = 4096;
+
+    /**
+     * Position of a replicon in the file, with its type.
+     */
+    private static class Record {
+        private final int index;
+        private final String type;
+
+        Record(int index, String type) {
+            this.index = index;
+            this.type = type;
+        }
+    }
+
+    private final IGeneService geneService;
+    private final Path file;
+    private FileChannel channel;
+    private final List<MappedByteBuffer> segments = new ArrayList<>();
+    private final Map<String, Record> records = new HashMap<>();
+    private final LinkedHashMap<String, Gene> recentGenes;
+    private int recordCount = 0;
+
+    @Inject
+    public PlasmidStoreServiceImpl(IGeneService geneService, IConfigService configService) {
+        this.geneService = geneService;
+        int cacheSize = Integer.parseInt(configService.getProperty("plasmidCacheSize"));
+        this.recentGenes = new LinkedHashMap<String, Gene>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Gene> eldest) {
+                return size() > cacheSize;
+            }
+        };
+        this.file = Paths.get(configService.getProperty("plasmidStore"));
+    }
+
+    @Override
+    public synchronized void put(Gene gene) throws IOException {
+        Record record = records.get(gene.getName());
+        int index = record == null ? recordCount++ : record.index;
+        MappedByteBuffer segment = getSegment(index);
+        int position = (index % SEGMENT_RECORDS) * RECORD_SIZE;
+
+        for (int phase = 0; phase < 3; phase++) {
+            long[] stat = gene.getTrinuStat(phase);
+            int[] pref = gene.getTrinuPref(phase);
+            for (int i = 0; i < CodonIndex.TRINUCLEOTIDE_COUNT; i++) {
+                int column = phase * CodonIndex.TRINUCLEOTIDE_COUNT + i;
+                segment.putLong(position + TRINU_STAT_OFFSET + column * Long.BYTES, stat[i]);
+                segment.putInt(position + TRINU_PREF_OFFSET + column * Integer.BYTES, pref[i]);
+            }
+        }
+        for (int phase = 0; phase < 2; phase++) {
+            long[] stat = gene.getDinuStat(phase);
+            for (int i = 0; i < CodonIndex.DINUCLEOTIDE_COUNT; i++) {
+                segment.putLong(position + DINU_STAT_OFFSET + (phase * CodonIndex.DINUCLEOTIDE_COUNT + i) * Long.BYTES, stat[i]);
+            }
+        }
+        segment.putLong(position + TOTAL_CDS_OFFSET, gene.getTotalCds());
+        segment.putLong(position + TOTAL_TRINUCLEOTIDE_OFFSET, gene.getTotalTrinucleotide());
+        segment.putLong(position + TOTAL_DINUCLEOTIDE_OFFSET, gene.getTotalDinucleotide());
+        segment.putInt(position + TOTAL_UNPROCESSED_CDS_OFFSET, gene.getTotalUnprocessedCds());
+        segment.putInt(position + TOTAL_PREF_TRINU_OFFSET, gene.getTotalPrefTrinu0());
+        segment.putInt(position + TOTAL_PREF_TRINU_OFFSET + Integer.BYTES, gene.getTotalPrefTrinu1());
+        segment.putInt(position + TOTAL_PREF_TRINU_OFFSET + 2 * Integer.BYTES, gene.getTotalPrefTrinu2());
+
+        records.put(gene.getName(), new Record(index, gene.getType()));
+        recentGenes.remove(gene.getName());
+    }
+
+    @Override
+    public synchronized Gene get(String accession, String path) {
+        Gene counts = recentGenes.get(accession);
+        if (counts == null) {
+            Record record = records.get(accession);
+            if (record == null) {
+                return null;
+            }
+            counts = readRecord(accession, record);
+            recentGenes.put(accession, counts);
+        }
+        // The cached counts are never handed out, every host gets its own gene
+        Gene gene = geneService.createGene(accession, counts.getType(), path, 0, 0);
+        gene.addCounts(counts);
+        return gene;
+    }
+
+    private Gene readRecord(String accession, Record record) {
+        MappedByteBuffer segment = segments.get(record.index / SEGMENT_RECORDS);
+        int position = (record.index % SEGMENT_RECORDS) * RECORD_SIZE;
+
+        Gene gene = geneService.createGene(accession, record.type, null, 0, 0);
+        for (int phase = 0; phase < 3; phase++) {
+            long[] stat = gene.getTrinuStat(phase);
+            int[] pref = gene.getTrinuPref(phase);
+            for (int i = 0; i < CodonIndex.TRINUCLEOTIDE_COUNT; i++) {
+                int column = phase * CodonIndex.TRINUCLEOTIDE_COUNT + i;
+                stat[i] = segment.getLong(position + TRINU_STAT_OFFSET + column * Long.BYTES);
+                pref[i] = segment.getInt(position + TRINU_PREF_OFFSET + column * Integer.BYTES);
+            }
+        }
+        for (int phase = 0; phase < 2; phase++) {
+            long[] stat = gene.getDinuStat(phase);
+            for (int i = 0; i < CodonIndex.DINUCLEOTIDE_COUNT; i++) {
+                stat[i] = segment.getLong(position + DINU_STAT_OFFSET + (phase * CodonIndex.DINUCLEOTIDE_COUNT + i) * Long.BYTES);
+            }
+        }
+        gene.setTotalCds(segment.getLong(position + TOTAL_CDS_OFFSET));
+        gene.setTotalTrinucleotide(segment.getLong(position + TOTAL_TRINUCLEOTIDE_OFFSET));
+        gene.setTotalDinucleotide(segment.getLong(position + TOTAL_DINUCLEOTIDE_OFFSET));
+        gene.setTotalUnprocessedCds(segment.getInt(position + TOTAL_UNPROCESSED_CDS_OFFSET));
+        gene.setTotalPrefTrinu0(segment.getInt(position + TOTAL_PREF_TRINU_OFFSET));
+        gene.setTotalPrefTrinu1(segment.getInt(position + TOTAL_PREF_TRINU_OFFSET + Integer.BYTES));
+        gene.setTotalPrefTrinu2(segment.getInt(position + TOTAL_PREF_TRINU_OFFSET + 2 * Integer.BYTES));
+        return gene;
+    }
+
+    /**
+     * The file and its mapped segments are kept and overwritten by the next records.
+     */
+    @Override
+    public synchronized void clear() {
+        records.clear();
+        recentGenes.clear();
+        recordCount = 0;
+    }
+
+    private MappedByteBuffer getSegment(int index) throws IOException {
+        if (channel == null) {
+            if (file.getParent() != null) {
+                Files.createDirectories(file.getParent());
+            }
+            // The records only live as long as the index in memory
+            channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        }
+        int segmentIndex = index / SEGMENT_RECORDS;
+        while (segments.size() <= segmentIndex) {
+            long segmentSize = (long) SEGMENT_RECORDS * RECORD_SIZE;
+            segments.add(channel.map(FileChannel.MapMode.READ_WRITE, segments.size() * segmentSize, segmentSize));
+        }
+        return segments.get(segmentIndex);
+    }
+}
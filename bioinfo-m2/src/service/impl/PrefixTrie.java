@@ -0,0 +1,110 @@
+package service.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Character trie over string keys, finding every key which is a prefix of a given string in a single walk of that
+ * string.
+ * The keys found are returned in the order they were put, so the trie can replace a scan of a list of keys.
+ */
+final class PrefixTrie<V> {
+    private final Node<V> root = new Node<>();
+    private int size = 0;
+
+    private static class Node<V> {
+        // Children sorted by character, most nodes have a single one
+        private char[] characters = new char[0];
+        private Node<V>[] children = newChildren(0);
+        // Values of the key ending at this node, with their rank of insertion
+        private List<Entry<V>> entries;
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        private static <V> Node<V>[] newChildren(int length) {
+            return (Node<V>[]) new Node[length];
+        }
+
+        Node<V> child(char character) {
+            int index = Arrays.binarySearch(characters, character);
+            return index >= 0 ? children[index] : null;
+        }
+
+        Node<V> addChild(char character) {
+            int index = Arrays.binarySearch(characters, character);
+            if (index >= 0) {
+                return children[index];
+            }
+            index = -index - 1;
+            char[] newCharacters = new char[characters.length + 1];
+            Node<V>[] newChildren = newChildren(children.length + 1);
+            System.arraycopy(characters, 0, newCharacters, 0, index);
+            System.arraycopy(children, 0, newChildren, 0, index);
+            System.arraycopy(characters, index, newCharacters, index + 1, characters.length - index);
+            System.arraycopy(children, index, newChildren, index + 1, children.length - index);
+            Node<V> child = new Node<>();
+            newCharacters[index] = character;
+            newChildren[index] = child;
+            characters = newCharacters;
+            children = newChildren;
+            return child;
+        }
+    }
+
+    private static class Entry<V> implements Comparable<Entry<V>> {
+        private final int rank;
+        private final V value;
+
+        Entry(int rank, V value) {
+            this.rank = rank;
+            this.value = value;
+        }
+
+        @Override
+        public int compareTo(Entry<V> entry) {
+            return Integer.compare(rank, entry.rank);
+        }
+    }
+
+    /**
+     * Adds a value for the key, a key may have several values.
+     */
+    void put(String key, V value) {
+        Node<V> node = root;
+        for (int i = 0; i < key.length(); i++) {
+            node = node.addChild(key.charAt(i));
+        }
+        if (node.entries == null) {
+            node.entries = new ArrayList<>(1);
+        }
+        node.entries.add(new Entry<>(size++, value));
+    }
+
+    /**
+     * Returns the values of every key which is a prefix of the text (the text itself included), in insertion order.
+     */
+    List<V> prefixesOf(String text) {
+        List<Entry<V>> found = null;
+        Node<V> node = root;
+        for (int i = 0; node != null; i++) {
+            if (node.entries != null) {
+                if (found == null) {
+                    found = new ArrayList<>(node.entries);
+                } else {
+                    found.addAll(node.entries);
+                }
+            }
+            node = i < text.length() ? node.child(text.charAt(i)) : null;
+        }
+        if (found == null) {
+            return Collections.emptyList();
+        }
+        Collections.sort(found);
+        List<V> values = new ArrayList<>(found.size());
+        for (Entry<V> entry : found) {
+            values.add(entry.value);
+        }
+        return values;
+    }
+}
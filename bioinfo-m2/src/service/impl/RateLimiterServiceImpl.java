@@ -0,0 +1,110 @@
+package service.impl;
+
+import com.google.common.util.concurrent.RateLimiter;
+import com.google.inject.Inject;
+
+import service.interfaces.IConfigService;
+import service.interfaces.IRateLimiterService;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Additive increase / multiplicative decrease of the request rate of each host.
+ * Every healthy response adds 1/rate to the rate (about one request per second every second), responses
+ * noticeably slower than the best latency seen hold it, and overload signals halve it (at most once per
+ * {@link #DECREASE_INTERVAL_NANOS}, so that the requests already in flight do not divide it several times).
+ */
+public class RateLimiterServiceImpl implements IRateLimiterService {
+    private static final double DECREASE_FACTOR = 0.5;
+    private static final double LATENCY_TOLERANCE = 2;
+    private static final double LATENCY_SMOOTHING = 0.2;
+    private static final long DECREASE_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(2);
+
+    private final double initialRate;
+    private final double minRate;
+    private final double maxRate;
+    private final Map<String, HostLimiter> limiters = new ConcurrentHashMap<>();
+
+    private class HostLimiter {
+        final RateLimiter rateLimiter = RateLimiter.create(initialRate);
+        double rate = initialRate;
+        double latency = -1;
+        double bestLatency = Double.MAX_VALUE;
+        long lastDecrease = System.nanoTime() - DECREASE_INTERVAL_NANOS;
+
+        synchronized void onSuccess(long latencyNanos) {
+            latency = latency < 0 ? latencyNanos : latency + LATENCY_SMOOTHING * (latencyNanos - latency);
+            bestLatency = Math.min(bestLatency, latency);
+            if (latency <= LATENCY_TOLERANCE * bestLatency) {
+                setRate(rate + 1 / rate);
+            }
+        }
+
+        synchronized void onOverload() {
+            long now = System.nanoTime();
+            if (now - lastDecrease >= DECREASE_INTERVAL_NANOS) {
+                lastDecrease = now;
+                setRate(rate * DECREASE_FACTOR);
+            }
+        }
+
+        private void setRate(double newRate) {
+            newRate = Math.max(minRate, Math.min(maxRate, newRate));
+            if (newRate != rate) {
+                rate = newRate;
+                rateLimiter.setRate(rate);
+            }
+        }
+    }
+
+    @Inject
+    public RateLimiterServiceImpl(IConfigService configService) {
+        this.initialRate = Double.parseDouble(configService.getProperty("httpInitialRate"));
+        this.minRate = Double.parseDouble(configService.getProperty("httpMinRate"));
+        this.maxRate = Double.parseDouble(configService.getProperty("httpMaxRate"));
+    }
+
+    private HostLimiter getLimiter(String host) {
+        return limiters.computeIfAbsent(host, h -> new HostLimiter());
+    }
+
+    @Override
+    public void acquire(String host) {
+        getLimiter(host).rateLimiter.acquire();
+    }
+
+    @Override
+    public boolean tryAcquire(String host) {
+        return getLimiter(host).rateLimiter.tryAcquire();
+    }
+
+    @Override
+    public void onSuccess(String host, long latencyNanos) {
+        getLimiter(host).onSuccess(latencyNanos);
+    }
+
+    @Override
+    public void onOverload(String host) {
+        getLimiter(host).onOverload();
+    }
+
+    @Override
+    public double getRate(String host) {
+        HostLimiter limiter = getLimiter(host);
+        synchronized (limiter) {
+            return limiter.rate;
+        }
+    }
+
+    @Override
+    public Map<String, Double> getRates() {
+        Map<String, Double> rates = new TreeMap<>();
+        for (String host : limiters.keySet()) {
+            rates.put(host, getRate(host));
+        }
+        return rates;
+    }
+}
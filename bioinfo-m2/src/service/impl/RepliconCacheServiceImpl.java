@@ -0,0 +1,200 @@
+package service.impl;
+
+import com.google.inject.Inject;
+
+import service.interfaces.IConfigService;
+import service.interfaces.IRepliconCacheService;
+
+import org.apache.commons.io.input.TeeInputStream;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * On-disk cache of the downloaded replicon CDS files, keyed by accession and remote update date.
+ * Entries are gzipped files listed in an index file in least recently used order; the least recently used
+ * entries are evicted when the cache exceeds its maximum size.
+ * Reading an entry only reorders the index in memory, the index file is rewritten when entries are added or removed.
+ */
+public class RepliconCacheServiceImpl implements IRepliconCacheService {
+    private static final String INDEX_FILE_NAME = "index";
+    private static final String ENTRY_EXTENSION = ".fasta.gz";
+    private static final String TEMPORARY_EXTENSION = ".tmp";
+
+    private final Path directory;
+    private final long maxSize;
+    // Entry sizes by key, in access order
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long size = 0;
+
+    @Inject
+    public RepliconCacheServiceImpl(IConfigService configService) {
+        this.directory = Paths.get(configService.getProperty("cache"));
+        this.maxSize = Long.parseLong(configService.getProperty("cacheMaxSize"));
+        try {
+            Files.createDirectories(directory);
+            loadIndex();
+        } catch (IOException e) {
+            System.err.println("Unable to load the replicon cache index");
+            e.printStackTrace();
+        }
+    }
+
+    private String getKey(String accession, Date updateDate) {
+        Calendar c = Calendar.getInstance();
+        c.setTime(updateDate);
+        return accession.replaceAll("[^A-Za-z0-9._-]", "_") + "_" + c.get(Calendar.YEAR) + "_" + (c.get(Calendar.MONTH) + 1) + "_" + c.get(Calendar.DAY_OF_MONTH);
+    }
+
+    private Path getEntryPath(String key) {
+        return directory.resolve(key + ENTRY_EXTENSION);
+    }
+
+    @Override
+    public InputStream get(String accession, Date updateDate) throws IOException {
+        String key = getKey(accession, updateDate);
+        synchronized (this) {
+            if (entries.get(key) == null) {
+                return null;
+            }
+        }
+        try {
+            return new GZIPInputStream(new BufferedInputStream(Files.newInputStream(getEntryPath(key))), 65536);
+        } catch (NoSuchFileException e) {
+            invalidate(accession, updateDate);
+            return null;
+        }
+    }
+
+    @Override
+    public InputStream put(String accession, Date updateDate, InputStream source) throws IOException {
+        String key = getKey(accession, updateDate);
+        Path temporary = Files.createTempFile(directory, key, TEMPORARY_EXTENSION);
+        return new CachingInputStream(source, new GZIPOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)), 65536), key, temporary);
+    }
+
+    @Override
+    public void invalidate(String accession, Date updateDate) {
+        String key = getKey(accession, updateDate);
+        synchronized (this) {
+            Long entrySize = entries.remove(key);
+            if (entrySize == null) {
+                return;
+            }
+            size -= entrySize;
+            deleteEntry(key);
+            writeIndex();
+        }
+    }
+
+    private synchronized void commit(String key, Path temporary) throws IOException {
+        long entrySize = Files.size(temporary);
+        Files.move(temporary, getEntryPath(key), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        Long previousSize = entries.put(key, entrySize);
+        size += entrySize - (previousSize == null ? 0 : previousSize);
+
+        Iterator<Map.Entry<String, Long>> iterator = entries.entrySet().iterator();
+        while (size > maxSize && iterator.hasNext()) {
+            Map.Entry<String, Long> eldest = iterator.next();
+            if (eldest.getKey().equals(key)) {
+                continue;
+            }
+            iterator.remove();
+            size -= eldest.getValue();
+            deleteEntry(eldest.getKey());
+        }
+        writeIndex();
+    }
+
+    private void deleteEntry(String key) {
+        try {
+            Files.deleteIfExists(getEntryPath(key));
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void loadIndex() throws IOException {
+        Path index = directory.resolve(INDEX_FILE_NAME);
+        if (Files.exists(index)) {
+            for (String line : Files.readAllLines(index, StandardCharsets.UTF_8)) {
+                String[] columns = line.split("\t");
+                if (columns.length == 2 && Files.exists(getEntryPath(columns[0]))) {
+                    long entrySize = Long.parseLong(columns[1]);
+                    entries.put(columns[0], entrySize);
+                    size += entrySize;
+                }
+            }
+        }
+        // Downloads interrupted by a crash
+        try (DirectoryStream<Path> temporaries = Files.newDirectoryStream(directory, "*" + TEMPORARY_EXTENSION)) {
+            for (Path temporary : temporaries) {
+                Files.deleteIfExists(temporary);
+            }
+        }
+    }
+
+    private void writeIndex() {
+        Path index = directory.resolve(INDEX_FILE_NAME);
+        Path temporary = directory.resolve(INDEX_FILE_NAME + TEMPORARY_EXTENSION);
+        try {
+            try (BufferedWriter writer = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8)) {
+                for (Map.Entry<String, Long> entry : entries.entrySet()) {
+                    writer.write(entry.getKey() + "\t" + entry.getValue());
+                    writer.newLine();
+                }
+            }
+            Files.move(temporary, index, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.err.println("Unable to write the replicon cache index");
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Copies what is read to the temporary entry file, and stores the entry on close if the end was reached.
+     */
+    private class CachingInputStream extends TeeInputStream {
+        private final OutputStream entry;
+        private final String key;
+        private final Path temporary;
+        private boolean complete = false;
+        private boolean closed = false;
+
+        CachingInputStream(InputStream source, OutputStream entry, String key, Path temporary) {
+            super(source, entry, false);
+            this.entry = entry;
+            this.key = key;
+            this.temporary = temporary;
+        }
+
+        @Override
+        protected void afterRead(int n) {
+            if (n == -1) {
+                complete = true;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                super.close();
+            } finally {
+                entry.close();
+                if (complete) {
+                    commit(key, temporary);
+                } else {
+                    Files.deleteIfExists(temporary);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package service.impl;
+
+import org.apache.http.nio.ContentDecoder;
+import org.apache.http.nio.IOControl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Body of a response being received, read while it is still being downloaded.
+ * The I/O reactor decodes the content into a queue of buffers and the reader copies them out directly; input is
+ * suspended while more than {@link #MAX_BUFFERED} bytes wait, so the memory used does not depend on the body size.
+ * Closing the stream early discards the rest of the body, which keeps the connection reusable.
+ * The reader waits on a lock rather than a monitor, so that a virtual thread waiting for the body releases its carrier.
+ */
+final class ResponseBodyStream extends InputStream {
+    private static final int CHUNK_SIZE = 32768;
+    private static final int MAX_BUFFERED = 32 * CHUNK_SIZE;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition readable = lock.newCondition();
+    private final ArrayDeque<ByteBuffer> chunks = new ArrayDeque<>();
+    private final ArrayDeque<ByteBuffer> freeChunks = new ArrayDeque<>();
+    private int buffered = 0;
+    private long received = 0;
+    private boolean ended = false;
+    private boolean closed = false;
+    private IOException error;
+    private IOControl ioControl;
+    private boolean suspended = false;
+
+    /**
+     * Called by the I/O reactor when content is available.
+     */
+    void consume(ContentDecoder decoder, IOControl ioControl) throws IOException {
+        lock.lock();
+        try {
+            this.ioControl = ioControl;
+            int read;
+            do {
+                ByteBuffer chunk = freeChunks.isEmpty() ? ByteBuffer.allocate(CHUNK_SIZE) : freeChunks.poll();
+                read = decoder.read(chunk);
+                if (read > 0 && !closed) {
+                    chunk.flip();
+                    chunks.add(chunk);
+                    buffered += read;
+                    received += read;
+                } else {
+                    chunk.clear();
+                    freeChunks.add(chunk);
+                }
+            } while (read > 0 && buffered < MAX_BUFFERED);
+
+            if (decoder.isCompleted()) {
+                ended = true;
+            } else if (buffered >= MAX_BUFFERED) {
+                suspended = true;
+                ioControl.suspendInput();
+            }
+            readable.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void end() {
+        lock.lock();
+        try {
+            ended = true;
+            readable.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void fail(Exception e) {
+        lock.lock();
+        try {
+            error = e instanceof IOException ? (IOException) e : new IOException(e);
+            readable.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * True once the first bytes arrived or the body ended.
+     */
+    boolean hasStarted() {
+        lock.lock();
+        try {
+            return received > 0 || ended || error != null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    boolean isEmpty() {
+        lock.lock();
+        try {
+            return ended && received == 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] b = new byte[1];
+        return read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        lock.lock();
+        try {
+            while (chunks.isEmpty() && !ended && error == null) {
+                try {
+                    readable.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException();
+                }
+            }
+            if (chunks.isEmpty()) {
+                if (error != null) {
+                    throw error;
+                }
+                return -1;
+            }
+
+            int copied = 0;
+            while (copied < len && !chunks.isEmpty()) {
+                ByteBuffer chunk = chunks.peek();
+                int n = Math.min(len - copied, chunk.remaining());
+                chunk.get(b, off + copied, n);
+                copied += n;
+                if (!chunk.hasRemaining()) {
+                    chunks.poll();
+                    chunk.clear();
+                    freeChunks.add(chunk);
+                }
+            }
+            buffered -= copied;
+            resumeIfDrained();
+            return copied;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int available() {
+        lock.lock();
+        try {
+            return buffered;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            chunks.clear();
+            buffered = 0;
+            resumeIfDrained();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void resumeIfDrained() {
+        if (suspended && buffered < MAX_BUFFERED / 2) {
+            suspended = false;
+            ioControl.requestInput();
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package service.impl;
+
+import com.google.inject.Inject;
+
+import model.CodonIndex;
+import model.Gene;
+import model.NucleotidesHolder;
+import service.interfaces.IFileService;
+import service.interfaces.IGeneService;
+import service.interfaces.IResultStoreService;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Binary sidecar of the Excel results, holding the raw counts of every record (replicon or sum) in fixed-width
+ * columns so that they can be aggregated again without parsing any workbook.
+ *
+ * Layout (big endian):
+ * <pre>
+ * int magic, int version, int recordCount
+ * recordCount x (int length, UTF-8 name, int length, UTF-8 type), padded to 8 bytes
+ * COLUMN_COUNT columns of recordCount longs:
+ *   trinucleotide counts (3 phases x 64), trinucleotide preferences (3 phases x 64),
+ *   dinucleotide counts (2 phases x 16), then the totals (see TOTAL_* offsets)
+ * </pre>
+ */
+public class ResultStoreServiceImpl implements IResultStoreService {
+    private static final String EXTENSION = ".counts";
+    private static final int MAGIC = 0x434F444E;
+    private static final int VERSION = 1;
+
+    private static final int TRINU_STAT_COLUMN = 0;
+    private static final int TRINU_PREF_COLUMN = TRINU_STAT_COLUMN + 3 * CodonIndex.TRINUCLEOTIDE_COUNT;
+    private static final int DINU_STAT_COLUMN = TRINU_PREF_COLUMN + 3 * CodonIndex.TRINUCLEOTIDE_COUNT;
+    private static final int TOTAL_CDS_COLUMN = DINU_STAT_COLUMN + 2 * CodonIndex.DINUCLEOTIDE_COUNT;
+    private static final int TOTAL_UNPROCESSED_CDS_COLUMN = TOTAL_CDS_COLUMN + 1;
+    private static final int TOTAL_TRINUCLEOTIDE_COLUMN = TOTAL_CDS_COLUMN + 2;
+    private static final int TOTAL_DINUCLEOTIDE_COLUMN = TOTAL_CDS_COLUMN + 3;
+    private static final int TOTAL_PREF_TRINU_COLUMN = TOTAL_CDS_COLUMN + 4;
+    private static final int COLUMN_COUNT = TOTAL_PREF_TRINU_COLUMN + 3;
+
+    private final IFileService fileService;
+    private final IGeneService geneService;
+
+    @Inject
+    public ResultStoreServiceImpl(IFileService fileService, IGeneService geneService) {
+        this.fileService = fileService;
+        this.geneService = geneService;
+    }
+
+    @Override
+    public File getStoreFile(String path, String fileName) {
+        return new File(fileService.getResultFilePath(path, fileName, EXTENSION));
+    }
+
+    @Override
+    public boolean isStoreFile(File file) {
+        return file.isFile() && file.getName().endsWith(EXTENSION);
+    }
+
+    @Override
+    public void write(String path, String fileName, Map<String, ? extends NucleotidesHolder> records) throws IOException {
+        List<byte[]> names = new ArrayList<>();
+        List<byte[]> types = new ArrayList<>();
+        List<NucleotidesHolder> holders = new ArrayList<>();
+        int headerSize = 3 * Integer.BYTES;
+        for (Map.Entry<String, ? extends NucleotidesHolder> record : records.entrySet()) {
+            byte[] name = String.valueOf(record.getKey()).getBytes(StandardCharsets.UTF_8);
+            String typeName = record.getValue().getType();
+            byte[] type = (typeName == null ? "" : typeName).getBytes(StandardCharsets.UTF_8);
+            names.add(name);
+            types.add(type);
+            holders.add(record.getValue());
+            headerSize += 2 * Integer.BYTES + name.length + type.length;
+        }
+        int count = holders.size();
+        int columnsStart = align(headerSize);
+
+        ByteBuffer buffer = ByteBuffer.allocate(columnsStart + COLUMN_COUNT * count * Long.BYTES);
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(count);
+        for (int i = 0; i < count; i++) {
+            buffer.putInt(names.get(i).length).put(names.get(i));
+            buffer.putInt(types.get(i).length).put(types.get(i));
+        }
+
+        for (int i = 0; i < count; i++) {
+            NucleotidesHolder holder = holders.get(i);
+            for (int phase = 0; phase < 3; phase++) {
+                long[] stat = holder.getTrinuStat(phase);
+                int[] pref = holder.getTrinuPref(phase);
+                for (int index = 0; index < CodonIndex.TRINUCLEOTIDE_COUNT; index++) {
+                    int column = phase * CodonIndex.TRINUCLEOTIDE_COUNT + index;
+                    putValue(buffer, columnsStart, count, TRINU_STAT_COLUMN + column, i, stat[index]);
+                    putValue(buffer, columnsStart, count, TRINU_PREF_COLUMN + column, i, pref[index]);
+                }
+            }
+            for (int phase = 0; phase < 2; phase++) {
+                long[] stat = holder.getDinuStat(phase);
+                for (int index = 0; index < CodonIndex.DINUCLEOTIDE_COUNT; index++) {
+                    putValue(buffer, columnsStart, count, DINU_STAT_COLUMN + phase * CodonIndex.DINUCLEOTIDE_COUNT + index, i, stat[index]);
+                }
+            }
+            putValue(buffer, columnsStart, count, TOTAL_CDS_COLUMN, i, holder.getTotalCds());
+            putValue(buffer, columnsStart, count, TOTAL_UNPROCESSED_CDS_COLUMN, i, holder.getTotalUnprocessedCds());
+            putValue(buffer, columnsStart, count, TOTAL_TRINUCLEOTIDE_COLUMN, i, holder.getTotalTrinucleotide());
+            putValue(buffer, columnsStart, count, TOTAL_DINUCLEOTIDE_COLUMN, i, holder.getTotalDinucleotide());
+            putValue(buffer, columnsStart, count, TOTAL_PREF_TRINU_COLUMN, i, holder.getTotalPrefTrinu0());
+            putValue(buffer, columnsStart, count, TOTAL_PREF_TRINU_COLUMN + 1, i, holder.getTotalPrefTrinu1());
+            putValue(buffer, columnsStart, count, TOTAL_PREF_TRINU_COLUMN + 2, i, holder.getTotalPrefTrinu2());
+        }
+        buffer.rewind();
+
+        // Written aside then moved, so that a reader never sees a partial file
+        Path target = getStoreFile(path, fileName).toPath();
+        Path temporary = target.resolveSibling(target.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+        Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    @Override
+    public List<Gene> read(File file) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        // A truncated or corrupt file fails with an IOException like an unreadable one, never with a buffer error
+        if (buffer.remaining() < 3 * Integer.BYTES || buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+            throw new IOException("Not a results store file: " + file.getPath());
+        }
+        int count = buffer.getInt();
+        if (count < 0 || count > buffer.remaining() / (2 * Integer.BYTES)) {
+            throw new IOException("Corrupt results store file: " + file.getPath());
+        }
+
+        List<Gene> genes = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String name = getString(buffer, file);
+            String type = getString(buffer, file);
+            genes.add(geneService.createGene(name, type, file.getParent(), 0, 0));
+        }
+        int columnsStart = align(buffer.position());
+        if (buffer.capacity() < columnsStart + (long) COLUMN_COUNT * count * Long.BYTES) {
+            throw new IOException("Truncated results store file: " + file.getPath());
+        }
+
+        for (int i = 0; i < count; i++) {
+            Gene gene = genes.get(i);
+            for (int phase = 0; phase < 3; phase++) {
+                long[] stat = gene.getTrinuStat(phase);
+                int[] pref = gene.getTrinuPref(phase);
+                for (int index = 0; index < CodonIndex.TRINUCLEOTIDE_COUNT; index++) {
+                    int column = phase * CodonIndex.TRINUCLEOTIDE_COUNT + index;
+                    stat[index] = getValue(buffer, columnsStart, count, TRINU_STAT_COLUMN + column, i);
+                    pref[index] = (int) getValue(buffer, columnsStart, count, TRINU_PREF_COLUMN + column, i);
+                }
+            }
+            for (int phase = 0; phase < 2; phase++) {
+                long[] stat = gene.getDinuStat(phase);
+                for (int index = 0; index < CodonIndex.DINUCLEOTIDE_COUNT; index++) {
+                    stat[index] = getValue(buffer, columnsStart, count, DINU_STAT_COLUMN + phase * CodonIndex.DINUCLEOTIDE_COUNT + index, i);
+                }
+            }
+            gene.setTotalCds(getValue(buffer, columnsStart, count, TOTAL_CDS_COLUMN, i));
+            gene.setTotalUnprocessedCds((int) getValue(buffer, columnsStart, count, TOTAL_UNPROCESSED_CDS_COLUMN, i));
+            gene.setTotalTrinucleotide(getValue(buffer, columnsStart, count, TOTAL_TRINUCLEOTIDE_COLUMN, i));
+            gene.setTotalDinucleotide(getValue(buffer, columnsStart, count, TOTAL_DINUCLEOTIDE_COLUMN, i));
+            gene.setTotalPrefTrinu0((int) getValue(buffer, columnsStart, count, TOTAL_PREF_TRINU_COLUMN, i));
+            gene.setTotalPrefTrinu1((int) getValue(buffer, columnsStart, count, TOTAL_PREF_TRINU_COLUMN + 1, i));
+            gene.setTotalPrefTrinu2((int) getValue(buffer, columnsStart, count, TOTAL_PREF_TRINU_COLUMN + 2, i));
+        }
+        return genes;
+    }
+
+    private static int align(int position) {
+        return (position + Long.BYTES - 1) & -Long.BYTES;
+    }
+
+    private static void putValue(ByteBuffer buffer, int columnsStart, int count, int column, int record, long value) {
+        buffer.putLong(columnsStart + (column * count + record) * Long.BYTES, value);
+    }
+
+    private static long getValue(ByteBuffer buffer, int columnsStart, int count, int column, int record) {
+        return buffer.getLong(columnsStart + (column * count + record) * Long.BYTES);
+    }
+
+    private static String getString(ByteBuffer buffer, File file) throws IOException {
+        int length = buffer.remaining() < Integer.BYTES ? -1 : buffer.getInt();
+        if (length < 0 || length > buffer.remaining()) {
+            throw new IOException("Truncated results store file: " + file.getPath());
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,184 @@
+package service.impl;
+
+import com.google.api.client.util.BackOff;
+import com.google.api.client.util.ExponentialBackOff;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.inject.Inject;
+import com.google.inject.name.Named;
+
+import service.exception.HttpStatusException;
+import service.interfaces.IRetryService;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.*;
+
+/**
+ * Retries are scheduled on a timer, so no thread waits for the backoff.
+ * A host failing {@link #FAILURE_THRESHOLD} times in a row opens its circuit for {@link #OPEN_MILLIS}: the attempts
+ * to the host are postponed until then, without counting as attempts, and a single trial request closes it again
+ * or reopens it.
+ */
+public class RetryServiceImpl implements IRetryService {
+    private static final int FAILURE_THRESHOLD = 5;
+    private static final long OPEN_MILLIS = 30000;
+    private static final long HALF_OPEN_WAIT_MILLIS = 1000;
+
+    private final ScheduledExecutorService scheduler;
+    private final Map<String, CircuitBreaker> circuitBreakers = new ConcurrentHashMap<>();
+
+    private static class CircuitBreaker {
+        int consecutiveFailures = 0;
+        long openUntil = 0;
+        boolean trialInFlight = false;
+
+        /**
+         * Returns 0 if a request can be sent now, otherwise the time to wait before asking again.
+         */
+        synchronized long acquire() {
+            if (consecutiveFailures < FAILURE_THRESHOLD) {
+                return 0;
+            }
+            long now = System.currentTimeMillis();
+            if (now < openUntil) {
+                return openUntil - now;
+            }
+            if (trialInFlight) {
+                return HALF_OPEN_WAIT_MILLIS;
+            }
+            trialInFlight = true;
+            return 0;
+        }
+
+        synchronized void onSuccess() {
+            consecutiveFailures = 0;
+            trialInFlight = false;
+        }
+
+        synchronized void onFailure() {
+            consecutiveFailures++;
+            if (consecutiveFailures >= FAILURE_THRESHOLD && (trialInFlight || consecutiveFailures == FAILURE_THRESHOLD)) {
+                openUntil = System.currentTimeMillis() + OPEN_MILLIS;
+                System.err.println("Circuit opened for " + OPEN_MILLIS / 1000 + "s after " + consecutiveFailures + " failures");
+            }
+            trialInFlight = false;
+        }
+
+        synchronized boolean isOpen() {
+            return consecutiveFailures >= FAILURE_THRESHOLD;
+        }
+    }
+
+    private class Retry<T> implements FutureCallback<T> {
+        final SettableFuture<T> result = SettableFuture.create();
+        final String key;
+        final CircuitBreaker circuitBreaker;
+        final int maxAttempts;
+        final Callable<ListenableFuture<T>> attempt;
+        final BackOff backOff = buildBackOff();
+        int attempts = 0;
+
+        Retry(String key, String host, int maxAttempts, Callable<ListenableFuture<T>> attempt) {
+            this.key = key;
+            this.circuitBreaker = host == null ? null : circuitBreakers.computeIfAbsent(host, h -> new CircuitBreaker());
+            this.maxAttempts = maxAttempts;
+            this.attempt = attempt;
+        }
+
+        void run() {
+            if (result.isDone()) {
+                return;
+            }
+            long wait = circuitBreaker == null ? 0 : circuitBreaker.acquire();
+            if (wait > 0) {
+                scheduler.schedule(this::run, wait, TimeUnit.MILLISECONDS);
+                return;
+            }
+            attempts++;
+            ListenableFuture<T> future;
+            try {
+                future = attempt.call();
+            } catch (Exception e) {
+                future = Futures.immediateFailedFuture(e);
+            }
+            Futures.addCallback(future, this, MoreExecutors.directExecutor());
+        }
+
+        @Override
+        public void onSuccess(T value) {
+            if (circuitBreaker != null) {
+                circuitBreaker.onSuccess();
+            }
+            result.set(value);
+        }
+
+        @Override
+        public void onFailure(Throwable throwable) {
+            boolean retryable = isRetryable(throwable);
+            if (circuitBreaker != null) {
+                if (retryable) {
+                    circuitBreaker.onFailure();
+                } else {
+                    // The host answered
+                    circuitBreaker.onSuccess();
+                }
+            }
+            long delay = BackOff.STOP;
+            if (retryable && attempts < maxAttempts) {
+                try {
+                    delay = backOff.nextBackOffMillis();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+            if (delay == BackOff.STOP) {
+                result.setException(throwable);
+            } else {
+                System.err.println("Retrying " + key + " in " + delay + "ms (attempt " + (attempts + 1) + "/" + maxAttempts + "): " + throwable);
+                scheduler.schedule(this::run, delay, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    @Inject
+    public RetryServiceImpl(@Named("RetryScheduler") ScheduledExecutorService scheduler) {
+        this.scheduler = scheduler;
+    }
+
+    private static ExponentialBackOff buildBackOff() {
+        return new ExponentialBackOff.Builder()
+                .setInitialIntervalMillis(500)
+                .setMaxElapsedTimeMillis(900000)
+                .setMaxIntervalMillis(6000)
+                .setMultiplier(1.5)
+                .setRandomizationFactor(0.5)
+                .build();
+    }
+
+    private static boolean isRetryable(Throwable throwable) {
+        if (throwable instanceof ExecutionException && throwable.getCause() != null) {
+            throwable = throwable.getCause();
+        }
+        if (throwable instanceof HttpStatusException) {
+            return ((HttpStatusException) throwable).isRetryable();
+        }
+        return !(throwable instanceof CancellationException);
+    }
+
+    @Override
+    public <T> ListenableFuture<T> retry(String key, String host, int maxAttempts, Callable<ListenableFuture<T>> attempt) {
+        Retry<T> retry = new Retry<>(key, host, maxAttempts, attempt);
+        retry.run();
+        return retry.result;
+    }
+
+    @Override
+    public boolean isCircuitOpen(String host) {
+        CircuitBreaker circuitBreaker = circuitBreakers.get(host);
+        return circuitBreaker != null && circuitBreaker.isOpen();
+    }
+}
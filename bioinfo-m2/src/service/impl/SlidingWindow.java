@@ -0,0 +1,129 @@
+package service.impl;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+
+/**
+ * Runs asynchronous tasks over a list with at most a given number in flight: the next item is started as soon as
+ * any running task completes, instead of waiting for a whole stack of items.
+ * Like {@link Futures#successfulAsList}, a failed task gives a null result. Cancelling the returned future, or the
+ * stop condition becoming true, stops admitting new items.
+ */
+final class SlidingWindow<T, R> {
+    private final List<T> items;
+    private final int maxInFlight;
+    private final Function<T, ListenableFuture<R>> task;
+    private final BiConsumer<T, R> onCompletion;
+    private final BooleanSupplier stop;
+    private final Object[] results;
+    private final SettableFuture<List<R>> future = SettableFuture.create();
+    private int next = 0;
+    private int inFlight = 0;
+    // Set while a thread runs the admission loop; tasks completing meanwhile leave the admission to it, so tasks
+    // completing synchronously do not recurse
+    private boolean admitting = false;
+
+    private SlidingWindow(List<T> items, int maxInFlight, Function<T, ListenableFuture<R>> task, BiConsumer<T, R> onCompletion, BooleanSupplier stop) {
+        this.items = new ArrayList<>(items);
+        this.maxInFlight = Math.max(1, maxInFlight);
+        this.task = task;
+        this.onCompletion = onCompletion;
+        this.stop = stop;
+        this.results = new Object[items.size()];
+    }
+
+    /**
+     * @param onCompletion called with each item and its result as they complete, may be null
+     * @param stop         checked before admitting each item, may be null
+     */
+    static <T, R> ListenableFuture<List<R>> run(List<T> items, int maxInFlight, Function<T, ListenableFuture<R>> task, BiConsumer<T, R> onCompletion, BooleanSupplier stop) {
+        SlidingWindow<T, R> window = new SlidingWindow<>(items, maxInFlight, task, onCompletion, stop);
+        window.admit();
+        return window.future;
+    }
+
+    private void admit() {
+        synchronized (this) {
+            if (admitting) {
+                return;
+            }
+            admitting = true;
+        }
+        while (true) {
+            int index;
+            boolean finished;
+            synchronized (this) {
+                boolean stopped = future.isCancelled() || (stop != null && stop.getAsBoolean());
+                if (stopped || next >= items.size() || inFlight >= maxInFlight) {
+                    admitting = false;
+                    finished = inFlight == 0 && (stopped || next >= items.size());
+                    index = -1;
+                } else {
+                    finished = false;
+                    index = next++;
+                    inFlight++;
+                }
+            }
+            if (index < 0) {
+                if (finished) {
+                    complete();
+                }
+                return;
+            }
+            start(index);
+        }
+    }
+
+    private void start(int index) {
+        T item = items.get(index);
+        ListenableFuture<R> taskFuture;
+        try {
+            taskFuture = task.apply(item);
+        } catch (RuntimeException e) {
+            taskFuture = Futures.immediateFailedFuture(e);
+        }
+        Futures.addCallback(taskFuture, new FutureCallback<R>() {
+            @Override
+            public void onSuccess(R result) {
+                done(index, item, result);
+            }
+
+            @Override
+            public void onFailure(Throwable throwable) {
+                done(index, item, null);
+            }
+        }, MoreExecutors.directExecutor());
+    }
+
+    private void done(int index, T item, R result) {
+        synchronized (this) {
+            results[index] = result;
+        }
+        if (onCompletion != null) {
+            try {
+                onCompletion.accept(item, result);
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+        synchronized (this) {
+            inFlight--;
+        }
+        admit();
+    }
+
+    @SuppressWarnings("unchecked")
+    private void complete() {
+        future.set((List<R>) Arrays.asList(results));
+    }
+}
@@ -0,0 +1,138 @@
+package service.impl;
+
+import service.interfaces.StageMetrics;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Thread pool of one stage of the replicon pipeline (network -> parse -> write), with its own threads and a bounded
+ * queue.
+ * A full queue blocks the threads of the upstream stages that submit to it, so a slow stage slows down the stages
+ * feeding it instead of piling up work. The other threads (I/O reactor, schedulers, threads of the same or a
+ * downstream stage) are never blocked: their tasks are queued beyond the bound, which cannot deadlock since no
+ * stage waits on a stage before it.
+ */
+public class StageExecutor extends ThreadPoolExecutor {
+    private static final ThreadLocal<StageExecutor> CURRENT_STAGE = new ThreadLocal<>();
+
+    private final String name;
+    private final int order;
+    private final int capacity;
+    private final Semaphore slots;
+    private final AtomicLong blockedSubmissions = new AtomicLong();
+    private final AtomicLong blockedNanos = new AtomicLong();
+    private final AtomicLong overflowSubmissions = new AtomicLong();
+    private final AtomicLong busyNanos = new AtomicLong();
+    private final ThreadLocal<Long> taskStart = new ThreadLocal<>();
+
+    /**
+     * A task holding one slot of the queue until it starts.
+     */
+    private static class SlotTask implements Runnable {
+        private final Runnable task;
+
+        SlotTask(Runnable task) {
+            this.task = task;
+        }
+
+        @Override
+        public void run() {
+            task.run();
+        }
+    }
+
+    /**
+     * @param order position of the stage in the pipeline, the upstream stages have a lower order
+     */
+    public StageExecutor(String name, int order, int threads, int capacity) {
+        this(name, order, threads, capacity, newThreadFactory(name));
+    }
+
+    public StageExecutor(String name, int order, int threads, int capacity, ThreadFactory threadFactory) {
+        super(threads, threads, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), threadFactory);
+        this.name = name;
+        this.order = order;
+        this.capacity = capacity;
+        this.slots = new Semaphore(capacity);
+    }
+
+    /**
+     * Returns a stage starting a thread of the given factory for each task, meant for virtual threads: the tasks
+     * never wait in the queue, and the threads left idle end after a second.
+     */
+    public static StageExecutor threadPerTask(String name, int order, int capacity, ThreadFactory threadFactory) {
+        StageExecutor stage = new StageExecutor(name, order, Integer.MAX_VALUE, capacity, threadFactory);
+        stage.setKeepAliveTime(1, TimeUnit.SECONDS);
+        stage.allowCoreThreadTimeOut(true);
+        return stage;
+    }
+
+    private static ThreadFactory newThreadFactory(String name) {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        if (!slots.tryAcquire()) {
+            StageExecutor caller = CURRENT_STAGE.get();
+            if (caller == null || caller.order >= order) {
+                overflowSubmissions.incrementAndGet();
+                super.execute(task);
+                return;
+            }
+            awaitSlot();
+        }
+        try {
+            super.execute(new SlotTask(task));
+        } catch (RejectedExecutionException e) {
+            slots.release();
+            throw e;
+        }
+    }
+
+    private void awaitSlot() {
+        long start = System.nanoTime();
+        blockedSubmissions.incrementAndGet();
+        try {
+            slots.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException("Interrupted while waiting for the " + name + " stage", e);
+        } finally {
+            blockedNanos.addAndGet(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    protected void beforeExecute(Thread thread, Runnable task) {
+        super.beforeExecute(thread, task);
+        CURRENT_STAGE.set(this);
+        if (task instanceof SlotTask) {
+            slots.release();
+        }
+        taskStart.set(System.nanoTime());
+    }
+
+    @Override
+    protected void afterExecute(Runnable task, Throwable throwable) {
+        busyNanos.addAndGet(System.nanoTime() - taskStart.get());
+        super.afterExecute(task, throwable);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public StageMetrics getMetrics() {
+        return new StageMetrics(name, getPoolSize(), getActiveCount(), getQueue().size(), capacity, getCompletedTaskCount(),
+                blockedSubmissions.get(), TimeUnit.NANOSECONDS.toMillis(blockedNanos.get()), overflowSubmissions.get(),
+                TimeUnit.NANOSECONDS.toMillis(busyNanos.get()));
+    }
+}
@@ -0,0 +1,220 @@
+package service.impl;
+
+import com.google.inject.Inject;
+
+import model.Kingdom;
+import service.interfaces.IFileService;
+import service.interfaces.IUpdateJournalService;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Append-only journal of the processed organisms and replicons, one file per kingdom under "./updates/".
+ * Each line is a record {@code O|R <tab> name <tab> epoch millis}; the last record of a name wins.
+ * Records are written in batches, each batch being forced to the disk, so a crash loses at most the records of the
+ * current batch and leaves at worst a truncated last line, which is ignored on load.
+ * The journal is rewritten from memory once it holds mostly superseded records.
+ */
+public class UpdateJournalServiceImpl implements IUpdateJournalService {
+    private static final String DIRECTORY = "updates";
+    private static final String EXTENSION = ".journal";
+    private static final String ORGANISM = "O";
+    private static final String REPLICON = "R";
+    private static final int SYNC_BATCH_SIZE = 64;
+    private static final int MIN_COMPACTION_RECORDS = 1024;
+
+    private final IFileService fileService;
+    private final Map<Kingdom, Journal> journals = new ConcurrentHashMap<>();
+
+    private static class Journal {
+        final Path path;
+        final Map<String, Date> organisms = new HashMap<>();
+        final Map<String, Date> replicons = new HashMap<>();
+        final StringBuilder pending = new StringBuilder();
+        int pendingRecords = 0;
+        int records = 0;
+        FileChannel channel;
+
+        Journal(Path path) {
+            this.path = path;
+        }
+    }
+
+    @Inject
+    public UpdateJournalServiceImpl(IFileService fileService) {
+        this.fileService = fileService;
+    }
+
+    @Override
+    public void load(Kingdom kingdom) throws IOException {
+        if (journals.containsKey(kingdom)) {
+            return;
+        }
+        Path directory = Paths.get(DIRECTORY);
+        Files.createDirectories(directory);
+        Journal journal = new Journal(directory.resolve(kingdom.getLabel() + EXTENSION));
+
+        synchronized (journal) {
+            if (Files.exists(journal.path)) {
+                for (String line : Files.readAllLines(journal.path, StandardCharsets.UTF_8)) {
+                    if (apply(journal, line)) {
+                        journal.records++;
+                    }
+                }
+            } else if (Files.exists(directory.resolve(kingdom.getLabel() + ".json"))) {
+                journal.organisms.putAll(fileService.readUpdateFile(kingdom));
+            }
+            // Starts from a compacted file, which also drops a truncated last record
+            compact(journal);
+        }
+        if (journals.putIfAbsent(kingdom, journal) != null) {
+            journal.channel.close();
+        }
+    }
+
+    @Override
+    public Date getOrganismUpdate(Kingdom kingdom, String organismName) {
+        Journal journal = journals.get(kingdom);
+        if (journal == null) {
+            return null;
+        }
+        synchronized (journal) {
+            return journal.organisms.get(organismName);
+        }
+    }
+
+    @Override
+    public Date getRepliconUpdate(Kingdom kingdom, String accession) {
+        Journal journal = journals.get(kingdom);
+        if (journal == null) {
+            return null;
+        }
+        synchronized (journal) {
+            return journal.replicons.get(accession);
+        }
+    }
+
+    @Override
+    public void recordOrganism(Kingdom kingdom, String organismName, Date date) {
+        record(kingdom, ORGANISM, organismName, date);
+    }
+
+    @Override
+    public void recordReplicon(Kingdom kingdom, String accession, Date date) {
+        record(kingdom, REPLICON, accession, date);
+    }
+
+    private void record(Kingdom kingdom, String kind, String name, Date date) {
+        Journal journal = journals.get(kingdom);
+        if (journal == null) {
+            System.err.println("Update journal not loaded for kingdom " + kingdom);
+            return;
+        }
+        synchronized (journal) {
+            String line = format(kind, name, date);
+            apply(journal, line);
+            journal.pending.append(line).append('\n');
+            journal.pendingRecords++;
+            if (journal.pendingRecords >= SYNC_BATCH_SIZE) {
+                flush(kingdom, journal);
+            }
+        }
+    }
+
+    @Override
+    public void sync(Kingdom kingdom) {
+        Journal journal = journals.get(kingdom);
+        if (journal == null) {
+            return;
+        }
+        synchronized (journal) {
+            flush(kingdom, journal);
+            int live = journal.organisms.size() + journal.replicons.size();
+            if (journal.records > MIN_COMPACTION_RECORDS && journal.records > 2 * live) {
+                try {
+                    compact(journal);
+                } catch (IOException e) {
+                    System.err.println("Unable to compact the update journal of kingdom " + kingdom);
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    private void flush(Kingdom kingdom, Journal journal) {
+        if (journal.pendingRecords == 0) {
+            return;
+        }
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(journal.pending.toString().getBytes(StandardCharsets.UTF_8));
+            while (buffer.hasRemaining()) {
+                journal.channel.write(buffer);
+            }
+            journal.channel.force(false);
+            journal.records += journal.pendingRecords;
+            journal.pending.setLength(0);
+            journal.pendingRecords = 0;
+        } catch (IOException e) {
+            System.err.println("Unable to write the update journal of kingdom " + kingdom);
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Rewrites the journal with one record per name, then reopens it for appending.
+     */
+    private void compact(Journal journal) throws IOException {
+        if (journal.channel != null) {
+            journal.channel.close();
+        }
+        Path temporary = journal.path.resolveSibling(journal.path.getFileName() + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8)) {
+            for (Map.Entry<String, Date> entry : journal.organisms.entrySet()) {
+                writer.write(format(ORGANISM, entry.getKey(), entry.getValue()));
+                writer.newLine();
+            }
+            for (Map.Entry<String, Date> entry : journal.replicons.entrySet()) {
+                writer.write(format(REPLICON, entry.getKey(), entry.getValue()));
+                writer.newLine();
+            }
+        }
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+        Files.move(temporary, journal.path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        journal.records = journal.organisms.size() + journal.replicons.size();
+        journal.channel = FileChannel.open(journal.path, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    private static String format(String kind, String name, Date date) {
+        return kind + "\t" + name.replace('\t', ' ').replace('\n', ' ').replace('\r', ' ') + "\t" + date.getTime();
+    }
+
+    private static boolean apply(Journal journal, String line) {
+        String[] columns = line.split("\t");
+        if (columns.length != 3) {
+            return false;
+        }
+        Date date;
+        try {
+            date = new Date(Long.parseLong(columns[2]));
+        } catch (NumberFormatException e) {
+            return false;
+        }
+        if (ORGANISM.equals(columns[0])) {
+            journal.organisms.put(columns[1], date);
+        } else if (REPLICON.equals(columns[0])) {
+            journal.replicons.put(columns[1], date);
+        } else {
+            return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,11 @@
+package service.interfaces;
+
+/**
+ * Receives every valid coding sequence found by the parser.
+ * The array is a scratch buffer reused for the next sequence: only the first {@code length} bytes are meaningful
+ * and they must not be kept after the call returns.
+ */
+@FunctionalInterface
+public interface CdsConsumer {
+    void accept(byte[] sequence, int length);
+}
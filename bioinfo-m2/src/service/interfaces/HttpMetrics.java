@@ -0,0 +1,78 @@
+package service.interfaces;
+
+/**
+ * Snapshot of the HTTP engine: requests in flight, hedged requests and state of the connection pool.
+ */
+public class HttpMetrics {
+    private final int inFlight;
+    private final long completed;
+    private final long failed;
+    private final long hedged;
+    private final long hedgeWins;
+    private final int leasedConnections;
+    private final int availableConnections;
+    private final int pendingConnections;
+    private final int maxConnections;
+
+    public HttpMetrics(int inFlight, long completed, long failed, long hedged, long hedgeWins, int leasedConnections, int availableConnections, int pendingConnections, int maxConnections) {
+        this.inFlight = inFlight;
+        this.completed = completed;
+        this.failed = failed;
+        this.hedged = hedged;
+        this.hedgeWins = hedgeWins;
+        this.leasedConnections = leasedConnections;
+        this.availableConnections = availableConnections;
+        this.pendingConnections = pendingConnections;
+        this.maxConnections = maxConnections;
+    }
+
+    public int getInFlight() {
+        return inFlight;
+    }
+
+    public long getCompleted() {
+        return completed;
+    }
+
+    public long getFailed() {
+        return failed;
+    }
+
+    /**
+     * Number of requests sent a second time because they were slow.
+     */
+    public long getHedged() {
+        return hedged;
+    }
+
+    /**
+     * Number of hedged requests answered first by their second request.
+     */
+    public long getHedgeWins() {
+        return hedgeWins;
+    }
+
+    public int getLeasedConnections() {
+        return leasedConnections;
+    }
+
+    public int getAvailableConnections() {
+        return availableConnections;
+    }
+
+    public int getPendingConnections() {
+        return pendingConnections;
+    }
+
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    @Override
+    public String toString() {
+        return "in flight: " + inFlight + ", completed: " + completed + ", failed: " + failed
+                + ", hedged: " + hedged + " (won " + hedgeWins + ")"
+                + ", connections leased: " + leasedConnections + ", available: " + availableConnections
+                + ", pending: " + pendingConnections + ", max: " + maxConnections;
+    }
+}
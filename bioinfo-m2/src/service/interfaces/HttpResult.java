@@ -0,0 +1,39 @@
+package service.interfaces;
+
+import java.io.InputStream;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Response of a successful request: status, headers (case insensitive) and body.
+ */
+public class HttpResult {
+    private final int statusCode;
+    private final Map<String, String> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+    private final InputStream content;
+
+    public HttpResult(int statusCode, Map<String, String> headers, InputStream content) {
+        this.statusCode = statusCode;
+        this.headers.putAll(headers);
+        this.content = content;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    public String getHeader(String name) {
+        return headers.get(name);
+    }
+
+    public InputStream getContent() {
+        return content;
+    }
+
+    /**
+     * Same response with a decoded body.
+     */
+    public HttpResult withContent(InputStream decodedContent) {
+        return new HttpResult(statusCode, headers, decodedContent);
+    }
+}
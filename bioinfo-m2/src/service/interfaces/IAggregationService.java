@@ -0,0 +1,19 @@
+package service.interfaces;
+
+import model.Kingdom;
+import model.NucleotidesHolder;
+import model.Organism;
+
+import java.util.Map;
+
+public interface IAggregationService {
+    /**
+     * Accumulates the sums (keyed by replicon type) of a processed organism in the node of its directory.
+     */
+    void addOrganism(Organism organism, Map<String, ? extends NucleotidesHolder> organismSums);
+
+    /**
+     * Writes the Total_* files of every directory of the kingdom from the accumulated sums, then forgets them.
+     */
+    void createTotals(Kingdom kingdom);
+}
@@ -0,0 +1,13 @@
+package service.interfaces;
+
+import com.google.common.util.concurrent.ListenableFuture;
+
+import java.io.InputStream;
+
+public interface IBatchFetchService {
+    /**
+     * Returns the FASTA-CDS file of the replicon, fetched together with the other replicons requested in the same
+     * batch window.
+     */
+    ListenableFuture<InputStream> fetch(String accession);
+}
@@ -7,8 +7,8 @@ import model.Kingdom;
 import model.Organism;
 import model.Sum;
 
-import org.apache.poi.xssf.usermodel.XSSFSheet;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
 
 import javax.swing.tree.TreeModel;
 
@@ -22,19 +22,19 @@ import java.util.Map;
 public interface IFileService {
     ListenableFuture<TreeModel> buildTree(String path);
 
-    XSSFWorkbook createWorkbook();
+    Workbook createWorkbook();
 
-    XSSFSheet fillWorkbook(Organism organism, Gene gene, XSSFWorkbook workbook);
+    Sheet fillWorkbook(Organism organism, Gene gene, Workbook workbook);
 
-    void writeWorkbook(XSSFWorkbook workbook, String path, String fileName) throws IOException;
+    void writeWorkbook(Workbook workbook, String path, String fileName) throws IOException;
+
+    String getResultFilePath(String path, String fileName, String extension);
     
     Map<String,Gene> readWorkbooks(Map<String,Gene> map, File excel, int retry);
 
     Map<String, Date> readUpdateFile(Kingdom kingdom) throws IOException;
 
-    void writeUpdateFile(Kingdom kingdom, Map<String, Date> updates) throws IOException;
-
     List<Boolean> createDirectories(List<String> paths);
 
-    XSSFWorkbook fillWorkbookSum(Organism organism, HashMap<String, Sum> organismSums, XSSFWorkbook workbook);
+    Workbook fillWorkbookSum(Organism organism, HashMap<String, Sum> organismSums, Workbook workbook);
 }
@@ -1,9 +1,15 @@
 package service.interfaces;
 
-import com.google.api.client.http.HttpResponse;
 import com.google.common.util.concurrent.ListenableFuture;
 
 public interface IHttpService {
-    ListenableFuture<HttpResponse> get(final String url);
-    ListenableFuture<HttpResponse> get(final String url, final String geneId);
+    ListenableFuture<HttpResult> get(final String url);
+    ListenableFuture<HttpResult> get(final String url, final String geneId);
+
+    /**
+     * Revalidates a cached resource with its ETag and Last-Modified validators, either can be null.
+     * The result has the status 304 and an empty body when the resource did not change.
+     */
+    ListenableFuture<HttpResult> getIfModified(final String url, final String etag, final String lastModified);
+    HttpMetrics getMetrics();
 }
@@ -5,7 +5,6 @@ import com.google.common.util.concurrent.ListenableFuture;
 import model.Kingdom;
 
 import java.util.List;
-import java.util.Map;
 
 public interface IKingdomService {
 
@@ -22,5 +21,5 @@ public interface IKingdomService {
     void setGenomesCkBIsSelected(Boolean isSelected);
     Boolean getGenomesCkBIsSelected();
     public boolean getCreatingExcelParents();
-    public void createParents(Kingdom kingdom, Map<Integer, List<String>> map, String folderPath, String folderName, int level, int max);
+    public void createParents(Kingdom kingdom);
 }
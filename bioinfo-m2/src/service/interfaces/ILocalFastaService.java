@@ -0,0 +1,16 @@
+package service.interfaces;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+public interface ILocalFastaService {
+    /**
+     * True when local FASTA-CDS files are configured (localFasta).
+     */
+    boolean isEnabled();
+
+    /**
+     * Returns the CDS of the replicon found in the local files, or null if they do not hold it.
+     */
+    InputStream open(String accession) throws IOException;
+}
@@ -0,0 +1,16 @@
+package service.interfaces;
+
+import com.google.common.util.concurrent.ListenableFuture;
+
+import model.Kingdom;
+import model.Organism;
+
+import java.util.List;
+
+public interface IOrganismListService {
+    /**
+     * Returns the organisms of the kingdom listed by its Genome2BE report.
+     * The organisms are new instances at each call, so the caller can modify them.
+     */
+    ListenableFuture<List<Organism>> getOrganisms(Kingdom kingdom);
+}
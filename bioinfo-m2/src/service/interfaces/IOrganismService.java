@@ -8,7 +8,6 @@ import model.Organism;
 
 import java.text.DateFormat;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -20,6 +19,4 @@ public interface IOrganismService {
     ListenableFuture<Organism> processOrganism(Kingdom kingdom, Organism organism);
     
     ListenableFuture<Organism> processOrganismWithoutGene(Map<String,Gene> genes, Kingdom kingdom, Organism organism);
-
-    ListenableFuture<Organism> processOrganism(Kingdom kingdom, Organism organism, HashMap<String, Gene> plasmidGenesMap);
 }
@@ -10,5 +10,5 @@ import java.util.List;
 
 public interface IParseService {
     ListenableFuture<List<Organism>> extractOrganismList(InputStream inputStream, String kingdomId);
-    ListenableFuture<List<String>> extractSequences(final InputStream inputStream, Gene gene);
+    ListenableFuture<Gene> extractSequences(final InputStream inputStream, Gene gene, CdsConsumer consumer);
 }
@@ -0,0 +1,10 @@
+package service.interfaces;
+
+import java.util.List;
+
+public interface IPipelineService {
+    /**
+     * Returns the state of the stages of the replicon pipeline, in pipeline order.
+     */
+    List<StageMetrics> getMetrics();
+}
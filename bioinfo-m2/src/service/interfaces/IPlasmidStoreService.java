@@ -0,0 +1,23 @@
+package service.interfaces;
+
+import model.Gene;
+
+import java.io.IOException;
+
+public interface IPlasmidStoreService {
+    /**
+     * Stores the counts of the plasmid replicon under its name, replacing the counts previously stored for it.
+     */
+    void put(Gene gene) throws IOException;
+
+    /**
+     * Returns a new gene in the given path holding the counts of the plasmid replicon, without their probabilities,
+     * or null if it is not stored.
+     */
+    Gene get(String accession, String path);
+
+    /**
+     * Forgets every stored replicon.
+     */
+    void clear();
+}
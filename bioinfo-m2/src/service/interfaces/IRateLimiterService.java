@@ -0,0 +1,30 @@
+package service.interfaces;
+
+import java.util.Map;
+
+public interface IRateLimiterService {
+    /**
+     * Blocks until a request to the given host is allowed.
+     */
+    void acquire(String host);
+
+    /**
+     * Takes a permit for the host only if one is available now, for the optional requests. The permit counts
+     * against the same rate as the other requests.
+     */
+    boolean tryAcquire(String host);
+
+    /**
+     * Reports a request answered normally, with the time it took to get the response headers.
+     */
+    void onSuccess(String host, long latencyNanos);
+
+    /**
+     * Reports a request the host could not serve (429, 5xx or timeout).
+     */
+    void onOverload(String host);
+
+    double getRate(String host);
+
+    Map<String, Double> getRates();
+}
@@ -0,0 +1,20 @@
+package service.interfaces;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Date;
+
+public interface IRepliconCacheService {
+    /**
+     * Returns the cached CDS file of the replicon for the given remote update date, or null if it is not cached.
+     */
+    InputStream get(String accession, Date updateDate) throws IOException;
+
+    /**
+     * Returns a stream reading the given source and caching it: the entry is stored when the stream is closed
+     * after the source was read to the end.
+     */
+    InputStream put(String accession, Date updateDate, InputStream source) throws IOException;
+
+    void invalidate(String accession, Date updateDate);
+}
@@ -0,0 +1,22 @@
+package service.interfaces;
+
+import model.Gene;
+import model.NucleotidesHolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+public interface IResultStoreService {
+    /**
+     * Writes the raw counts of the given records (keyed by name) next to the Excel file of the same name.
+     */
+    void write(String path, String fileName, Map<String, ? extends NucleotidesHolder> records) throws IOException;
+
+    List<Gene> read(File file) throws IOException;
+
+    File getStoreFile(String path, String fileName);
+
+    boolean isStoreFile(File file);
+}
@@ -0,0 +1,18 @@
+package service.interfaces;
+
+import com.google.common.util.concurrent.ListenableFuture;
+
+import java.util.concurrent.Callable;
+
+public interface IRetryService {
+    /**
+     * Runs the attempt until it succeeds, at most maxAttempts times, waiting a jittered exponential backoff between
+     * attempts. When host is not null, its circuit breaker delays the attempts while it is open.
+     */
+    <T> ListenableFuture<T> retry(String key, String host, int maxAttempts, Callable<ListenableFuture<T>> attempt);
+
+    /**
+     * True while the failures of the host keep its requests waiting.
+     */
+    boolean isCircuitOpen(String host);
+}
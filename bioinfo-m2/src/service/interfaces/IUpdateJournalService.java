@@ -0,0 +1,26 @@
+package service.interfaces;
+
+import model.Kingdom;
+
+import java.io.IOException;
+import java.util.Date;
+
+public interface IUpdateJournalService {
+    /**
+     * Loads the journal of the kingdom, migrating the former JSON update file if there is no journal yet.
+     */
+    void load(Kingdom kingdom) throws IOException;
+
+    Date getOrganismUpdate(Kingdom kingdom, String organismName);
+
+    Date getRepliconUpdate(Kingdom kingdom, String accession);
+
+    void recordOrganism(Kingdom kingdom, String organismName, Date date);
+
+    void recordReplicon(Kingdom kingdom, String accession, Date date);
+
+    /**
+     * Forces the pending records to the disk, and compacts the journal when it holds too many superseded records.
+     */
+    void sync(Kingdom kingdom);
+}
@@ -0,0 +1,77 @@
+package service.interfaces;
+
+/**
+ * Snapshot of one stage of the replicon pipeline: its threads, its queue and the time its upstream stages waited on it.
+ */
+public class StageMetrics {
+    private final String name;
+    private final int threads;
+    private final int active;
+    private final int queued;
+    private final int capacity;
+    private final long completed;
+    private final long blockedSubmissions;
+    private final long blockedMillis;
+    private final long overflowSubmissions;
+    private final long busyMillis;
+
+    public StageMetrics(String name, int threads, int active, int queued, int capacity, long completed, long blockedSubmissions, long blockedMillis, long overflowSubmissions, long busyMillis) {
+        this.name = name;
+        this.threads = threads;
+        this.active = active;
+        this.queued = queued;
+        this.capacity = capacity;
+        this.completed = completed;
+        this.blockedSubmissions = blockedSubmissions;
+        this.blockedMillis = blockedMillis;
+        this.overflowSubmissions = overflowSubmissions;
+        this.busyMillis = busyMillis;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public int getActive() {
+        return active;
+    }
+
+    public int getQueued() {
+        return queued;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public long getCompleted() {
+        return completed;
+    }
+
+    public long getBlockedSubmissions() {
+        return blockedSubmissions;
+    }
+
+    public long getBlockedMillis() {
+        return blockedMillis;
+    }
+
+    public long getOverflowSubmissions() {
+        return overflowSubmissions;
+    }
+
+    public long getBusyMillis() {
+        return busyMillis;
+    }
+
+    @Override
+    public String toString() {
+        return name + ": threads: " + threads + ", active: " + active + ", queued: " + queued + "/" + capacity
+                + ", completed: " + completed + ", busy: " + busyMillis + " ms"
+                + ", upstream blocked: " + blockedSubmissions + " (" + blockedMillis + " ms), overflow: " + overflowSubmissions;
+    }
+}
@@ -0,0 +1,105 @@
+package service.impl;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class CdsScannerTest extends TestCase {
+    private static final String FASTA =
+            ">lcl|NC_000001.1_cds_1 [gene=a] [location=1..9]\n"
+            + "ATGAAA\n"
+            + "TAA\n"
+            // Start after end, the header is not valid
+            + ">lcl|NC_000001.1_cds_2 [location=9..1]\n"
+            + "ATGCCCTAA\n"
+            // Not a multiple of 3
+            + ">lcl|NC_000001.1_cds_3 [location=complement(10..20)]\n"
+            + "ATGCCTAA\n"
+            // Not ACGT
+            + ">lcl|NC_000001.1_cds_4 [location=join(1..3,5..10)]\n"
+            + "ATGNNNTAA\n"
+            // No init codon
+            + ">lcl|NC_000001.1_cds_5 [location=1..9]\n"
+            + "CCCAAATAA\n"
+            // No location, the header is not valid
+            + ">lcl|NC_000001.1_cds_6 [gene=f]\n"
+            + "ATGAAATAA\n"
+            + ">lcl|NC_000001.1_cds_7 [location=complement(join(1..6,10..15))]\r\n"
+            + "GTGGGG\r\n"
+            + "TGA\r\n"
+            // Invalid locator inside a join
+            + ">lcl|NC_000001.1_cds_8 [location=join(1..6,15..10)]\n"
+            + "ATGAAATAA\n"
+            + ">lcl|NC_000001.1_cds_9 [location=<1..>9]\n"
+            + "ATGAAATAA";
+
+    public void testValidSequences() throws IOException {
+        List<String> sequences = new ArrayList<>();
+        CdsScanner scanner = new CdsScanner((sequence, length) -> sequences.add(new String(sequence, 0, length, StandardCharsets.US_ASCII)), Collections.emptyList());
+        scanner.scan(new ByteArrayInputStream(FASTA.getBytes(StandardCharsets.US_ASCII)));
+
+        assertEquals(2, sequences.size());
+        assertEquals("ATGAAATAA", sequences.get(0));
+        assertEquals("GTGGGGTGA", sequences.get(1));
+        assertEquals(5, scanner.getTotalCds());
+        assertEquals(3, scanner.getUnprocessedCds());
+        assertFalse(scanner.isEmpty());
+    }
+
+    public void testSplitInput() throws IOException {
+        byte[] bytes = FASTA.getBytes(StandardCharsets.US_ASCII);
+        List<String> expected = new ArrayList<>();
+        CdsScanner whole = new CdsScanner((sequence, length) -> expected.add(new String(sequence, 0, length, StandardCharsets.US_ASCII)), Collections.emptyList());
+        whole.scan(new ByteArrayInputStream(bytes));
+
+        // Headers and sequences crossing the buffers give the same result
+        List<String> actual = new ArrayList<>();
+        CdsScanner split = new CdsScanner((sequence, length) -> actual.add(new String(sequence, 0, length, StandardCharsets.US_ASCII)), Collections.emptyList());
+        for (int i = 0; i < bytes.length; i++) {
+            split.feed(bytes, i, 1);
+        }
+        split.finish();
+
+        assertEquals(expected, actual);
+        assertEquals(whole.getTotalCds(), split.getTotalCds());
+        assertEquals(whole.getUnprocessedCds(), split.getUnprocessedCds());
+    }
+
+    public void testLongSequence() throws IOException {
+        StringBuilder sequence = new StringBuilder("ATG");
+        for (int i = 0; i < 10000; i++) {
+            sequence.append("GCA");
+        }
+        sequence.append("TAG");
+        List<String> sequences = new ArrayList<>();
+        CdsScanner scanner = new CdsScanner((bytes, length) -> sequences.add(new String(bytes, 0, length, StandardCharsets.US_ASCII)), Collections.emptyList());
+        scanner.scan(new ByteArrayInputStream((">lcl|NC_000001.1_cds_1 [location=1..30006]\n" + sequence + "\n").getBytes(StandardCharsets.US_ASCII)));
+
+        assertEquals(Collections.singletonList(sequence.toString()), sequences);
+    }
+
+    public void testCopies() throws IOException {
+        ByteArrayOutputStream copy = new ByteArrayOutputStream();
+        List<OutputStream> copies = Collections.singletonList(copy);
+        CdsScanner scanner = new CdsScanner((sequence, length) -> {
+        }, copies);
+        scanner.scan(new ByteArrayInputStream(FASTA.getBytes(StandardCharsets.US_ASCII)));
+
+        assertEquals(FASTA, new String(copy.toByteArray(), StandardCharsets.US_ASCII));
+    }
+
+    public void testEmpty() throws IOException {
+        CdsScanner scanner = new CdsScanner((sequence, length) -> fail(), Collections.emptyList());
+        scanner.scan(new ByteArrayInputStream("\n\r\n".getBytes(StandardCharsets.US_ASCII)));
+
+        assertTrue(scanner.isEmpty());
+        assertEquals(0, scanner.getTotalCds());
+    }
+}
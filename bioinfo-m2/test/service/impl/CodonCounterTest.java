@@ -0,0 +1,157 @@
+package service.impl;
+
+import junit.framework.TestCase;
+
+import model.CodingSequence;
+import model.Gene;
+
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Checks the fused counting pass against the former map-based per-phase loops.
+ */
+public class CodonCounterTest extends TestCase {
+    private static final String[] NUCLEOTIDES = {"A", "C", "G", "T"};
+
+    /**
+     * Counts of the former implementation, keyed like the historical maps.
+     */
+    private static class Reference {
+        final Map<String, Integer> trinuStat0 = initMap(3);
+        final Map<String, Integer> trinuStat1 = initMap(3);
+        final Map<String, Integer> trinuStat2 = initMap(3);
+        final Map<String, Integer> trinuPref0 = initMap(3);
+        final Map<String, Integer> trinuPref1 = initMap(3);
+        final Map<String, Integer> trinuPref2 = initMap(3);
+        final Map<String, Integer> dinuStat0 = initMap(2);
+        final Map<String, Integer> dinuStat1 = initMap(2);
+        int totalPref0;
+        int totalPref1;
+        int totalPref2;
+        int totalTrinucleotide;
+        int totalDinucleotide;
+
+        void count(String sequence) {
+            Map<String, Integer> before0 = new LinkedHashMap<>(trinuStat0);
+            Map<String, Integer> before1 = new LinkedHashMap<>(trinuStat1);
+            Map<String, Integer> before2 = new LinkedHashMap<>(trinuStat2);
+            for (int i = 0; i < sequence.length() - 3; i += 3) {
+                increment(trinuStat0, sequence.substring(i, i + 3));
+                increment(trinuStat1, sequence.substring(i + 1, i + 4));
+                increment(trinuStat2, sequence.substring(i + 2, i + 5));
+                totalTrinucleotide++;
+            }
+            for (String s : before0.keySet()) {
+                int count0 = trinuStat0.get(s) - before0.get(s);
+                int count1 = trinuStat1.get(s) - before1.get(s);
+                int count2 = trinuStat2.get(s) - before2.get(s);
+                int max = Math.max(count0, Math.max(count1, count2));
+                if (max == count0) {
+                    increment(trinuPref0, s);
+                    totalPref0++;
+                }
+                if (max == count1) {
+                    increment(trinuPref1, s);
+                    totalPref1++;
+                }
+                if (max == count2) {
+                    increment(trinuPref2, s);
+                    totalPref2++;
+                }
+            }
+
+            for (int i = 0; i < sequence.length() - (3 + sequence.length() % 2) + 1; i += 2) {
+                increment(dinuStat0, sequence.substring(i, i + 2));
+                increment(dinuStat1, sequence.substring(i + 1, i + 3));
+                totalDinucleotide++;
+            }
+        }
+
+        private static void increment(Map<String, Integer> map, String key) {
+            map.put(key, map.get(key) + 1);
+        }
+
+        private static Map<String, Integer> initMap(int length) {
+            Map<String, Integer> map = new LinkedHashMap<>();
+            int size = 1 << (2 * length);
+            for (int index = 0; index < size; index++) {
+                StringBuilder key = new StringBuilder();
+                for (int shift = 2 * (length - 1); shift >= 0; shift -= 2) {
+                    key.append(NUCLEOTIDES[(index >> shift) & 3]);
+                }
+                map.put(key.toString(), 0);
+            }
+            return map;
+        }
+    }
+
+    public void testSingleCodingSequence() {
+        assertSameCounts(new String[]{"ATGAAACCCGGGTTTTAA"});
+    }
+
+    public void testShortSequences() {
+        assertSameCounts(new String[]{"ATG", "ATGTAA", "GTGTAG", "TTGCATTGA"});
+    }
+
+    public void testRandomCodingSequences() {
+        Random random = new Random(42);
+        String[] sequences = new String[200];
+        for (int i = 0; i < sequences.length; i++) {
+            StringBuilder sequence = new StringBuilder(CodingSequence.codon_init[random.nextInt(CodingSequence.codon_init.length)]);
+            int codons = random.nextInt(400);
+            for (int j = 0; j < codons; j++) {
+                for (int k = 0; k < 3; k++) {
+                    sequence.append(NUCLEOTIDES[random.nextInt(4)]);
+                }
+            }
+            sequence.append(CodingSequence.codon_stop[random.nextInt(CodingSequence.codon_stop.length)]);
+            sequences[i] = sequence.toString();
+        }
+        assertSameCounts(sequences);
+    }
+
+    public void testCountsAreAdded() {
+        Gene gene = new Gene("NC_TEST", "chromosome", "", 0, 0);
+        byte[] sequence = "ATGAAATAA".getBytes(StandardCharsets.US_ASCII);
+        CodonCounter.count(sequence, sequence.length, gene);
+        CodonCounter.count(sequence, sequence.length, gene);
+        assertEquals(4, gene.getTotalTrinucleotide());
+        assertEquals(2L, (long) gene.getTrinuStatPhase0().get("ATG"));
+        assertEquals(2L, (long) gene.getTrinuStatPhase0().get("AAA"));
+    }
+
+    private static void assertSameCounts(String[] sequences) {
+        Reference reference = new Reference();
+        Gene gene = new Gene("NC_TEST", "chromosome", "", 0, 0);
+        for (String sequence : sequences) {
+            reference.count(sequence);
+            // Trailing bytes past the length must be ignored, as in the scanner buffer
+            byte[] buffer = (sequence + "GGGGGG").getBytes(StandardCharsets.US_ASCII);
+            CodonCounter.count(buffer, sequence.length(), gene);
+        }
+
+        assertSameMap(reference.trinuStat0, gene.getTrinuStatPhase0());
+        assertSameMap(reference.trinuStat1, gene.getTrinuStatPhase1());
+        assertSameMap(reference.trinuStat2, gene.getTrinuStatPhase2());
+        assertSameMap(reference.trinuPref0, gene.getTrinuPrefPhase0());
+        assertSameMap(reference.trinuPref1, gene.getTrinuPrefPhase1());
+        assertSameMap(reference.trinuPref2, gene.getTrinuPrefPhase2());
+        assertSameMap(reference.dinuStat0, gene.getDinuStatPhase0());
+        assertSameMap(reference.dinuStat1, gene.getDinuStatPhase1());
+        assertEquals(reference.totalPref0, gene.getTotalPrefTrinu0());
+        assertEquals(reference.totalPref1, gene.getTotalPrefTrinu1());
+        assertEquals(reference.totalPref2, gene.getTotalPrefTrinu2());
+        assertEquals(reference.totalTrinucleotide, gene.getTotalTrinucleotide());
+        assertEquals(reference.totalDinucleotide, gene.getTotalDinucleotide());
+    }
+
+    private static void assertSameMap(Map<String, Integer> expected, Map<String, ? extends Number> actual) {
+        assertEquals(expected.keySet(), actual.keySet());
+        for (Map.Entry<String, Integer> entry : expected.entrySet()) {
+            assertEquals(entry.getKey(), entry.getValue().longValue(), actual.get(entry.getKey()).longValue());
+        }
+    }
+}
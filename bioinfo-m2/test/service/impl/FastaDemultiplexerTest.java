@@ -0,0 +1,69 @@
+package service.impl;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+public class FastaDemultiplexerTest extends TestCase {
+    private static final String REPLICON_1 =
+            ">lcl|NC_000001.1_cds_WP_1.1_1 [gene=a] [location=1..9]\n"
+            + "ATGAAATAA\n"
+            + ">lcl|NC_000001.1_cds_WP_2.1_2 [gene=b] [location=10..18]\n"
+            + "ATGCCC\n"
+            + "TAA\n";
+    private static final String REPLICON_2 =
+            ">lcl|NC_000002.2_cds_WP_3.1_1 [location=complement(1..9)]\n"
+            + "ATGGGGTGA\n";
+    private static final String REPLICON_3 =
+            ">lcl|NC_000003_cds_4 [location=1..9]\n"
+            + "GTGTTTTAG";
+
+    public void testParseAccession() {
+        assertEquals("NC_000001.1", FastaDemultiplexer.parseAccession(">lcl|NC_000001.1_cds_WP_1.1_1 [gene=a] [location=1..9]"));
+        assertEquals("NC_000003", FastaDemultiplexer.parseAccession(">lcl|NC_000003_cds_4 [location=1..9]\n"));
+        assertEquals("NC_000004.1", FastaDemultiplexer.parseAccession(">NC_000004.1 description"));
+    }
+
+    public void testSplit() throws IOException {
+        List<String> accessions = new ArrayList<>();
+        List<String> sections = new ArrayList<>();
+        FastaDemultiplexer demultiplexer = new FastaDemultiplexer((accession, section) -> {
+            accessions.add(accession);
+            sections.add(new String(section, StandardCharsets.US_ASCII));
+        });
+        demultiplexer.demultiplex(new ByteArrayInputStream((REPLICON_1 + REPLICON_2 + REPLICON_3).getBytes(StandardCharsets.US_ASCII)));
+
+        assertEquals(3, accessions.size());
+        assertEquals("NC_000001.1", accessions.get(0));
+        assertEquals("NC_000002.2", accessions.get(1));
+        assertEquals("NC_000003", accessions.get(2));
+        assertEquals(REPLICON_1, sections.get(0));
+        assertEquals(REPLICON_2, sections.get(1));
+        assertEquals(REPLICON_3, sections.get(2));
+    }
+
+    public void testSplitInput() {
+        byte[] bytes = (REPLICON_1 + REPLICON_2 + REPLICON_3).getBytes(StandardCharsets.US_ASCII);
+        List<String> sections = new ArrayList<>();
+        FastaDemultiplexer demultiplexer = new FastaDemultiplexer((accession, section) -> sections.add(accession + "\t" + new String(section, StandardCharsets.US_ASCII)));
+        // Headers crossing the buffers give the same sections
+        for (int i = 0; i < bytes.length; i += 7) {
+            demultiplexer.feed(bytes, i, Math.min(7, bytes.length - i));
+        }
+        demultiplexer.finish();
+
+        assertEquals(3, sections.size());
+        assertEquals("NC_000001.1\t" + REPLICON_1, sections.get(0));
+        assertEquals("NC_000002.2\t" + REPLICON_2, sections.get(1));
+        assertEquals("NC_000003\t" + REPLICON_3, sections.get(2));
+    }
+
+    public void testEmpty() throws IOException {
+        FastaDemultiplexer demultiplexer = new FastaDemultiplexer((accession, section) -> fail());
+        demultiplexer.demultiplex(new ByteArrayInputStream(new byte[0]));
+    }
+}
@@ -0,0 +1,204 @@
+package service.impl;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.Key;
+import com.google.inject.Module;
+import com.google.inject.Provides;
+import com.google.inject.Singleton;
+import com.google.inject.name.Names;
+import com.google.inject.util.Modules;
+
+import junit.framework.TestCase;
+
+import model.Kingdom;
+import model.Organism;
+import service.interfaces.IConfigService;
+import service.interfaces.IKingdomService;
+import service.interfaces.IOrganismListService;
+import service.interfaces.IResultStoreService;
+import service.interfaces.IUpdateJournalService;
+import service.interfaces.Tuple;
+
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the chained kingdom -> organism -> replicon path of the application module with every stage, and the default
+ * pool, at 2 threads. A task waiting on another one would starve the pools and never complete.
+ * The replicons are read from a local FASTA-CDS file and the journal is kept in memory, so nothing goes to the
+ * network or the working directory.
+ */
+public class KingdomPipelineTest extends TestCase {
+    private static final int ORGANISMS = 200;
+    private static final int REPLICONS = 100;
+    private static final int REPLICONS_PER_ORGANISM = 3;
+
+    private Path directory;
+    private Injector injector;
+    private ListeningExecutorService defaultPool;
+    private InMemoryJournal journal;
+
+    /**
+     * Update journal of the test, which records nothing on the disk.
+     */
+    private static class InMemoryJournal implements IUpdateJournalService {
+        final Map<String, Date> organisms = new ConcurrentHashMap<>();
+        final Map<String, Date> replicons = new ConcurrentHashMap<>();
+
+        @Override
+        public void load(Kingdom kingdom) {
+        }
+
+        @Override
+        public Date getOrganismUpdate(Kingdom kingdom, String organismName) {
+            return organisms.get(organismName);
+        }
+
+        @Override
+        public Date getRepliconUpdate(Kingdom kingdom, String accession) {
+            return replicons.get(accession);
+        }
+
+        @Override
+        public void recordOrganism(Kingdom kingdom, String organismName, Date date) {
+            organisms.put(organismName, date);
+        }
+
+        @Override
+        public void recordReplicon(Kingdom kingdom, String accession, Date date) {
+            replicons.put(accession, date);
+        }
+
+        @Override
+        public void sync(Kingdom kingdom) {
+        }
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        directory = Files.createTempDirectory("kingdom-pipeline");
+        StringBuilder fasta = new StringBuilder();
+        for (int i = 0; i < REPLICONS; i++) {
+            fasta.append(">lcl|").append(accession(i)).append("_cds_WP_1.1_1 [location=1..12]\n")
+                    .append("ATGAAACCCTAA\n")
+                    .append(">lcl|").append(accession(i)).append("_cds_WP_2.1_2 [location=13..21]\n")
+                    .append("ATGGGGTGA\n");
+        }
+        Files.write(directory.resolve("replicons.fna"), fasta.toString().getBytes(StandardCharsets.US_ASCII));
+
+        Map<String, String> properties = new HashMap<>();
+        properties.put("dataDir", directory.resolve("Results") + "/");
+        properties.put("gene", directory.resolve("Gene") + "/");
+        properties.put("genome", directory.resolve("Genome") + "/");
+        properties.put("excelStreaming", "true");
+        properties.put("excelOutput", "false");
+        properties.put("cache", directory.resolve("Cache") + "/");
+        properties.put("cacheMaxSize", "2147483648");
+        properties.put("localFasta", directory.resolve("replicons.fna").toString());
+        properties.put("reports", directory.resolve("Reports") + "/");
+        properties.put("plasmidStore", directory.resolve("plasmids.store").toString());
+        properties.put("plasmidCacheSize", "1000");
+        properties.put("httpInitialRate", "2");
+        properties.put("httpMinRate", "0.5");
+        properties.put("httpMaxRate", "50");
+        properties.put("hedgeRequests", "false");
+        properties.put("hedgePercentile", "0.95");
+        properties.put("hedgeBudget", "0.05");
+        properties.put("hedgeBaseUrl", "");
+        properties.put("fetchBatchSize", "1");
+        properties.put("fetchBatchWindow", "200");
+        properties.put("repliconMemoSize", "2000");
+        properties.put("organismWindow", "50");
+        properties.put("repliconWindow", "100");
+        properties.put("executionMode", "platform");
+        // Small queues too, so that the upstream stages block on the full ones
+        properties.put("networkThreads", "2");
+        properties.put("networkQueue", "4");
+        properties.put("parseThreads", "2");
+        properties.put("parseQueue", "4");
+        properties.put("writeThreads", "2");
+        properties.put("writeQueue", "4");
+
+        journal = new InMemoryJournal();
+        defaultPool = MoreExecutors.listeningDecorator(Executors.newFixedThreadPool(2));
+        Module testModule = new AbstractModule() {
+            @Override
+            protected void configure() {
+                bind(IConfigService.class).toInstance(properties::get);
+                bind(IUpdateJournalService.class).toInstance(journal);
+                bind(IOrganismListService.class).toInstance(kingdom -> Futures.immediateFuture(createOrganisms()));
+            }
+
+            @Provides @Singleton
+            ListeningExecutorService provideListeningExecutorService() {
+                return defaultPool;
+            }
+        };
+        // The application module lives in the default package, so it can only be loaded by name
+        Module applicationModule = (Module) Class.forName("Main").getDeclaredConstructor().newInstance();
+        injector = Guice.createInjector(Modules.override(applicationModule).with(testModule));
+    }
+
+    @Override
+    protected void tearDown() throws IOException {
+        defaultPool.shutdownNow();
+        for (String stage : new String[]{"NetworkStage", "ParseStage", "WriteStage"}) {
+            injector.getInstance(Key.get(StageExecutor.class, Names.named(stage))).shutdownNow();
+        }
+        injector.getInstance(CloseableHttpAsyncClient.class).close();
+        TestServices.deleteRecursively(directory);
+    }
+
+    public void testTwoThreadsPerStage() throws Exception {
+        IKingdomService kingdomService = injector.getInstance(IKingdomService.class);
+        IResultStoreService resultStoreService = injector.getInstance(IResultStoreService.class);
+
+        List<Kingdom> kingdoms = kingdomService.createKingdomTrees(Collections.singletonList(Kingdom.Viruses), null).get(60, TimeUnit.SECONDS);
+
+        assertEquals(Collections.singletonList(Kingdom.Viruses), kingdoms);
+        assertEquals(ORGANISMS, journal.organisms.size());
+        // Every replicon was counted from the local file, none was downloaded
+        assertEquals(REPLICONS, journal.replicons.size());
+        for (Organism organism : Kingdom.Viruses.getOrganisms()) {
+            assertTrue(organism.getName(), resultStoreService.getStoreFile(organism.getPath(), organism.getName()).exists());
+        }
+    }
+
+    /**
+     * Organisms sharing their replicons, so that the counts in flight are shared too.
+     */
+    private static List<Organism> createOrganisms() {
+        List<Organism> organisms = new ArrayList<>();
+        Date updateDate = new Date(1500000000000L);
+        for (int i = 0; i < ORGANISMS; i++) {
+            List<Tuple<String, String>> geneIds = new ArrayList<>();
+            for (int j = 0; j < REPLICONS_PER_ORGANISM; j++) {
+                geneIds.add(new Tuple<>(accession((i + j * 37) % REPLICONS), "chromosome"));
+            }
+            organisms.add(new Organism("Organism " + i, "PRJNA" + i, "Group " + i % 4, "Subgroup " + i % 7, updateDate, geneIds, Kingdom.Viruses.getId()));
+        }
+        return organisms;
+    }
+
+    private static String accession(int index) {
+        return String.format("NC_%06d.1", index);
+    }
+}
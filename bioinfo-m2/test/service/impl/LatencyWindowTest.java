@@ -0,0 +1,44 @@
+package service.impl;
+
+import junit.framework.TestCase;
+
+public class LatencyWindowTest extends TestCase {
+
+    public void testPercentile() {
+        LatencyWindow window = new LatencyWindow(100);
+        for (int i = 100; i >= 1; i--) {
+            window.record(i);
+        }
+
+        assertEquals(95, window.percentile(0.95, 20));
+        assertEquals(50, window.percentile(0.5, 20));
+        assertEquals(100, window.percentile(1.0, 20));
+        assertEquals(1, window.percentile(0.0, 20));
+    }
+
+    public void testMinCount() {
+        LatencyWindow window = new LatencyWindow(100);
+        assertEquals(-1, window.percentile(0.95, 0));
+        for (int i = 1; i < 20; i++) {
+            window.record(i);
+        }
+        assertEquals(-1, window.percentile(0.95, 20));
+
+        window.record(20);
+        assertEquals(19, window.percentile(0.95, 20));
+    }
+
+    public void testOnlyLastLatencies() {
+        LatencyWindow window = new LatencyWindow(10);
+        for (int i = 0; i < 10; i++) {
+            window.record(1000);
+        }
+        // The slow requests leave the window
+        for (int i = 1; i <= 10; i++) {
+            window.record(i);
+        }
+
+        assertEquals(10, window.percentile(1.0, 10));
+        assertEquals(9, window.percentile(0.9, 10));
+    }
+}
@@ -0,0 +1,88 @@
+package service.impl;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+public class LocalFastaServiceImplTest extends TestCase {
+    private static final String REPLICON_1 =
+            ">lcl|NC_000001.1_cds_WP_1.1_1 [location=1..9]\n"
+            + "ATGAAATAA\n"
+            + ">lcl|NC_000001.1_cds_WP_2.1_2 [location=10..18]\n"
+            + "ATGCCCTAA\n";
+    private static final String REPLICON_2 =
+            ">lcl|NC_000002.2_cds_WP_3.1_1 [location=1..9]\n"
+            + "ATGGGGTGA\n";
+    private static final String REPLICON_2_OTHER =
+            ">lcl|NC_000002.2_cds_WP_3.1_1 [location=1..9]\n"
+            + "GTGGGGTGA\n";
+    private static final String REPLICON_3 =
+            ">lcl|NC_000003_cds_4 [location=1..9]\n"
+            + "GTGTTTTAG";
+
+    private Path directory;
+
+    @Override
+    protected void setUp() throws IOException {
+        directory = Files.createTempDirectory("local-fasta");
+        Files.write(directory.resolve("a.fna"), (REPLICON_1 + REPLICON_2).getBytes(StandardCharsets.US_ASCII));
+        Files.write(directory.resolve("b.fna"), (REPLICON_2_OTHER + REPLICON_3).getBytes(StandardCharsets.US_ASCII));
+        Files.write(directory.resolve(".hidden"), REPLICON_2_OTHER.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    @Override
+    protected void tearDown() throws IOException {
+        TestServices.deleteRecursively(directory);
+    }
+
+    public void testDirectory() throws IOException {
+        LocalFastaServiceImpl localFastaService = new LocalFastaServiceImpl(name -> directory.toString());
+
+        assertTrue(localFastaService.isEnabled());
+        assertEquals(REPLICON_1, read(localFastaService.open("NC_000001.1")));
+        // Taken from the first file holding it
+        assertEquals(REPLICON_2, read(localFastaService.open("NC_000002.2")));
+        assertEquals(REPLICON_3, read(localFastaService.open("NC_000003")));
+        assertNull(localFastaService.open("NC_000004.1"));
+    }
+
+    public void testUnversioned() throws IOException {
+        LocalFastaServiceImpl localFastaService = new LocalFastaServiceImpl(name -> directory.toString());
+
+        assertEquals(REPLICON_1, read(localFastaService.open("NC_000001")));
+        assertEquals(REPLICON_2, read(localFastaService.open("NC_000002")));
+        // Another version is not counted in place of the one asked for
+        assertNull(localFastaService.open("NC_000002.3"));
+        assertNull(localFastaService.open("NC_000003.1"));
+    }
+
+    public void testFile() throws IOException {
+        LocalFastaServiceImpl localFastaService = new LocalFastaServiceImpl(name -> directory.resolve("b.fna").toString());
+
+        assertEquals(REPLICON_2_OTHER, read(localFastaService.open("NC_000002.2")));
+        assertNull(localFastaService.open("NC_000001.1"));
+    }
+
+    public void testDisabled() throws IOException {
+        LocalFastaServiceImpl localFastaService = new LocalFastaServiceImpl(name -> " ");
+
+        assertFalse(localFastaService.isEnabled());
+        assertNull(localFastaService.open("NC_000001.1"));
+    }
+
+    private static String read(InputStream inputStream) throws IOException {
+        assertNotNull(inputStream);
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        byte[] buffer = new byte[5];
+        int read;
+        while ((read = inputStream.read(buffer)) != -1) {
+            outputStream.write(buffer, 0, read);
+        }
+        return new String(outputStream.toByteArray(), StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,102 @@
+package service.impl;
+
+import junit.framework.TestCase;
+
+import model.Gene;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+public class PlasmidStoreServiceImplTest extends TestCase {
+    private Path directory;
+    private PlasmidStoreServiceImpl plasmidStoreService;
+
+    @Override
+    protected void setUp() throws IOException {
+        directory = Files.createTempDirectory("plasmid-store");
+        Map<String, String> properties = new HashMap<>();
+        properties.put("plasmidStore", directory.resolve("plasmids.store").toString());
+        // Small cache, so that most genes are read back from the file
+        properties.put("plasmidCacheSize", "2");
+        plasmidStoreService = new PlasmidStoreServiceImpl(TestServices.geneService(), properties::get);
+    }
+
+    @Override
+    protected void tearDown() throws IOException {
+        TestServices.deleteRecursively(directory);
+    }
+
+    public void testRoundTrip() throws IOException {
+        Random random = new Random(42);
+        List<Gene> genes = new ArrayList<>();
+        // More than a segment of records
+        for (int i = 0; i < 5000; i++) {
+            Gene gene = TestServices.randomGene("NC_" + i, i % 2 == 0 ? "plasmid" : "chromosome", random);
+            genes.add(gene);
+            plasmidStoreService.put(gene);
+        }
+
+        for (Gene expected : genes) {
+            Gene gene = plasmidStoreService.get(expected.getName(), "host");
+            assertEquals(expected.getName(), gene.getName());
+            assertEquals(expected.getType(), gene.getType());
+            assertEquals("host", gene.getPath());
+            TestServices.assertSameCounts(expected, gene);
+        }
+        assertNull(plasmidStoreService.get("NC_5000", "host"));
+    }
+
+    public void testNewGeneForEachHost() throws IOException {
+        Gene expected = TestServices.randomGene("NC_1", "plasmid", new Random(42));
+        plasmidStoreService.put(expected);
+
+        Gene first = plasmidStoreService.get("NC_1", "host1");
+        Gene second = plasmidStoreService.get("NC_1", "host2");
+        assertNotSame(first, second);
+        assertEquals("host1", first.getPath());
+        assertEquals("host2", second.getPath());
+
+        // Changing the gene of a host leaves the stored counts unchanged
+        first.getTrinuStat(0)[0]++;
+        first.setTotalCds(first.getTotalCds() + 1);
+        TestServices.assertSameCounts(expected, plasmidStoreService.get("NC_1", "host3"));
+    }
+
+    public void testLazyFile() throws IOException {
+        assertNull(plasmidStoreService.get("NC_1", "host"));
+        plasmidStoreService.clear();
+        assertFalse(Files.exists(directory.resolve("plasmids.store")));
+
+        plasmidStoreService.put(TestServices.randomGene("NC_1", "plasmid", new Random(42)));
+        assertTrue(Files.exists(directory.resolve("plasmids.store")));
+    }
+
+    public void testOverwrite() throws IOException {
+        Random random = new Random(42);
+        plasmidStoreService.put(TestServices.randomGene("NC_1", "plasmid", random));
+        // Read once so that the gene is cached
+        plasmidStoreService.get("NC_1", "host");
+        Gene gene = TestServices.randomGene("NC_1", "plasmid", random);
+        plasmidStoreService.put(gene);
+
+        TestServices.assertSameCounts(gene, plasmidStoreService.get("NC_1", "host"));
+    }
+
+    public void testClear() throws IOException {
+        Random random = new Random(42);
+        plasmidStoreService.put(TestServices.randomGene("NC_1", "plasmid", random));
+        plasmidStoreService.get("NC_1", "host");
+        plasmidStoreService.clear();
+
+        assertNull(plasmidStoreService.get("NC_1", "host"));
+        Gene gene = TestServices.randomGene("NC_2", "plasmid", random);
+        plasmidStoreService.put(gene);
+        TestServices.assertSameCounts(gene, plasmidStoreService.get("NC_2", "host"));
+    }
+}
@@ -0,0 +1,68 @@
+package service.impl;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+public class PrefixTrieTest extends TestCase {
+
+    public void testPrefixes() {
+        PrefixTrie<String> trie = new PrefixTrie<>();
+        trie.put("Escherichia coli", "coli");
+        trie.put("Escherichia", "genus");
+        trie.put("Escherichia coli K-12", "K-12");
+        trie.put("Salmonella", "salmonella");
+
+        assertEquals(Arrays.asList("coli", "genus", "K-12"), trie.prefixesOf("Escherichia coli K-12 substr. MG1655"));
+        assertEquals(Arrays.asList("coli", "genus"), trie.prefixesOf("Escherichia coli"));
+        assertEquals(Collections.singletonList("genus"), trie.prefixesOf("Escherichia albertii"));
+        assertEquals(Collections.emptyList(), trie.prefixesOf("Escher"));
+        assertEquals(Collections.emptyList(), trie.prefixesOf(""));
+    }
+
+    public void testSeveralValues() {
+        PrefixTrie<Integer> trie = new PrefixTrie<>();
+        trie.put("ab", 1);
+        trie.put("a", 2);
+        trie.put("ab", 3);
+        trie.put("", 4);
+
+        assertEquals(Arrays.asList(1, 2, 3, 4), trie.prefixesOf("abc"));
+        assertEquals(Collections.singletonList(4), trie.prefixesOf("b"));
+    }
+
+    public void testSameAsScan() {
+        Random random = new Random(42);
+        List<String> keys = new ArrayList<>();
+        PrefixTrie<String> trie = new PrefixTrie<>();
+        for (int i = 0; i < 500; i++) {
+            String key = randomString(random, 1 + random.nextInt(6));
+            keys.add(key);
+            trie.put(key, key);
+        }
+
+        // Same values, in the same order, as testing every key
+        for (int i = 0; i < 2000; i++) {
+            String text = randomString(random, random.nextInt(10));
+            List<String> expected = new ArrayList<>();
+            for (String key : keys) {
+                if (text.startsWith(key)) {
+                    expected.add(key);
+                }
+            }
+            assertEquals(text, expected, trie.prefixesOf(text));
+        }
+    }
+
+    private static String randomString(Random random, int length) {
+        StringBuilder builder = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            builder.append((char) ('a' + random.nextInt(3)));
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,123 @@
+package service.impl;
+
+import junit.framework.TestCase;
+
+import model.Gene;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+public class ResultStoreServiceImplTest extends TestCase {
+    private Path directory;
+    private ResultStoreServiceImpl resultStoreService;
+
+    @Override
+    protected void setUp() throws IOException {
+        directory = Files.createTempDirectory("result-store");
+        resultStoreService = new ResultStoreServiceImpl(TestServices.fileService(), TestServices.geneService());
+    }
+
+    @Override
+    protected void tearDown() throws IOException {
+        TestServices.deleteRecursively(directory);
+    }
+
+    public void testRoundTrip() throws IOException {
+        Map<String, Gene> records = writeRecords();
+
+        File file = resultStoreService.getStoreFile(directory.toString(), "Organism");
+        assertTrue(resultStoreService.isStoreFile(file));
+        List<Gene> genes = resultStoreService.read(file);
+
+        assertEquals(records.size(), genes.size());
+        int i = 0;
+        for (Map.Entry<String, Gene> record : records.entrySet()) {
+            Gene gene = genes.get(i++);
+            assertEquals(record.getKey(), gene.getName());
+            assertEquals(record.getValue().getType(), gene.getType());
+            TestServices.assertSameCounts(record.getValue(), gene);
+        }
+        // Written aside then moved
+        assertFalse(new File(file.getPath() + ".tmp").exists());
+    }
+
+    public void testEmpty() throws IOException {
+        resultStoreService.write(directory.toString(), "Organism", new LinkedHashMap<String, Gene>());
+
+        assertTrue(resultStoreService.read(resultStoreService.getStoreFile(directory.toString(), "Organism")).isEmpty());
+    }
+
+    public void testRewrite() throws IOException {
+        writeRecords();
+        Map<String, Gene> records = new LinkedHashMap<>();
+        records.put("NC_000003.1", TestServices.randomGene("NC_000003.1", "plasmid", new Random(7)));
+        resultStoreService.write(directory.toString(), "Organism", records);
+
+        List<Gene> genes = resultStoreService.read(resultStoreService.getStoreFile(directory.toString(), "Organism"));
+        assertEquals(1, genes.size());
+        TestServices.assertSameCounts(records.get("NC_000003.1"), genes.get(0));
+    }
+
+    public void testTruncatedFile() throws IOException {
+        writeRecords();
+        File file = resultStoreService.getStoreFile(directory.toString(), "Organism");
+        long length = file.length();
+
+        for (long truncated = length - 1; truncated >= 0; truncated--) {
+            try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+                randomAccessFile.setLength(truncated);
+            }
+            try {
+                resultStoreService.read(file);
+                fail("Read a file truncated to " + truncated + " bytes");
+            } catch (IOException e) {
+                // Expected
+            }
+        }
+    }
+
+    public void testCorruptFile() throws IOException {
+        writeRecords();
+        File file = resultStoreService.getStoreFile(directory.toString(), "Organism");
+
+        // Magic, record count, then length of the first name
+        assertCorrupt(file, 0, 0);
+        assertCorrupt(file, 8, Integer.MAX_VALUE);
+        assertCorrupt(file, 8, -1);
+        assertCorrupt(file, 12, Integer.MAX_VALUE);
+        assertCorrupt(file, 12, -1);
+    }
+
+    private void assertCorrupt(File file, long position, int value) throws IOException {
+        byte[] original = Files.readAllBytes(file.toPath());
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+            randomAccessFile.seek(position);
+            randomAccessFile.writeInt(value);
+        }
+        try {
+            resultStoreService.read(file);
+            fail("Read a file with " + value + " at " + position);
+        } catch (IOException e) {
+            // Expected
+        } finally {
+            Files.write(file.toPath(), original);
+        }
+    }
+
+    private Map<String, Gene> writeRecords() throws IOException {
+        Random random = new Random(42);
+        Map<String, Gene> records = new LinkedHashMap<>();
+        records.put("NC_000001.1", TestServices.randomGene("NC_000001.1", "chromosome", random));
+        records.put("NC_000002.1", TestServices.randomGene("NC_000002.1", null, random));
+        records.put("Sum_Chromosome", TestServices.randomGene("Sum_Chromosome", "Chromosome", random));
+        resultStoreService.write(directory.toString(), "Organism", records);
+        return records;
+    }
+}
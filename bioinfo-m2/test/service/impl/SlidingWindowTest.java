@@ -0,0 +1,119 @@
+package service.impl;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class SlidingWindowTest extends TestCase {
+
+    public void testAdmission() throws Exception {
+        Map<Integer, SettableFuture<String>> started = new LinkedHashMap<>();
+        List<Integer> completed = new ArrayList<>();
+        ListenableFuture<List<String>> future = SlidingWindow.run(Arrays.asList(0, 1, 2, 3, 4), 2, item -> {
+            SettableFuture<String> task = SettableFuture.create();
+            started.put(item, task);
+            return task;
+        }, (item, result) -> completed.add(item), null);
+
+        assertEquals(Arrays.asList(0, 1), new ArrayList<>(started.keySet()));
+
+        // The next item starts as soon as any task completes, not only the first one
+        started.get(1).set("1");
+        assertEquals(Arrays.asList(0, 1, 2), new ArrayList<>(started.keySet()));
+        started.get(2).set("2");
+        assertEquals(Arrays.asList(0, 1, 2, 3), new ArrayList<>(started.keySet()));
+        started.get(0).set("0");
+        started.get(3).set("3");
+        assertFalse(future.isDone());
+        started.get(4).set("4");
+
+        assertTrue(future.isDone());
+        assertEquals(Arrays.asList("0", "1", "2", "3", "4"), future.get());
+        assertEquals(Arrays.asList(1, 2, 0, 3, 4), completed);
+    }
+
+    public void testFailures() throws Exception {
+        ListenableFuture<List<String>> future = SlidingWindow.run(Arrays.asList(0, 1, 2), 2, item -> {
+            if (item == 1) {
+                return Futures.immediateFailedFuture(new IllegalStateException());
+            }
+            if (item == 2) {
+                throw new IllegalStateException();
+            }
+            return Futures.immediateFuture("0");
+        }, null, null);
+
+        assertEquals(Arrays.asList("0", null, null), future.get());
+    }
+
+    public void testSynchronousTasks() throws Exception {
+        List<Integer> items = new ArrayList<>();
+        for (int i = 0; i < 100000; i++) {
+            items.add(i);
+        }
+        // Tasks completing synchronously must not recurse into the admission
+        ListenableFuture<List<Integer>> future = SlidingWindow.run(items, 4, Futures::immediateFuture, null, null);
+
+        assertEquals(items, future.get());
+    }
+
+    public void testEmpty() throws Exception {
+        ListenableFuture<List<String>> future = SlidingWindow.run(Collections.<Integer>emptyList(), 2, item -> Futures.immediateFuture(""), null, null);
+
+        assertTrue(future.get().isEmpty());
+    }
+
+    public void testStop() throws Exception {
+        AtomicBoolean stop = new AtomicBoolean(false);
+        List<SettableFuture<String>> started = new ArrayList<>();
+        ListenableFuture<List<String>> future = SlidingWindow.run(Arrays.asList(0, 1, 2, 3), 2, item -> {
+            SettableFuture<String> task = SettableFuture.create();
+            started.add(task);
+            return task;
+        }, null, stop::get);
+
+        stop.set(true);
+        started.get(0).set("0");
+        assertFalse(future.isDone());
+        started.get(1).set("1");
+
+        // The running tasks complete, no new item is admitted
+        assertEquals(2, started.size());
+        assertEquals(Arrays.asList("0", "1", null, null), future.get());
+    }
+
+    public void testCancel() {
+        List<SettableFuture<String>> started = new ArrayList<>();
+        ListenableFuture<List<String>> future = SlidingWindow.run(Arrays.asList(0, 1, 2, 3), 2, item -> {
+            SettableFuture<String> task = SettableFuture.create();
+            started.add(task);
+            return task;
+        }, null, null);
+
+        future.cancel(false);
+        started.get(0).set("0");
+        started.get(1).set("1");
+
+        assertEquals(2, started.size());
+        try {
+            future.get();
+            fail();
+        } catch (CancellationException e) {
+            // Expected
+        } catch (InterruptedException | ExecutionException e) {
+            fail(e.toString());
+        }
+    }
+}
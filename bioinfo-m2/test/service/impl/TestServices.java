@@ -0,0 +1,129 @@
+package service.impl;
+
+import com.google.common.util.concurrent.ListenableFuture;
+
+import junit.framework.Assert;
+
+import model.Gene;
+import model.Kingdom;
+import model.Organism;
+import service.interfaces.IFileService;
+import service.interfaces.IGeneService;
+import service.interfaces.Tuple;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Minimal services and fixtures for the tests of the stores, which only need genes and file names.
+ */
+final class TestServices {
+    private TestServices() {
+    }
+
+    static IGeneService geneService() {
+        return new IGeneService() {
+            @Override
+            public Gene createGene(String name, String type, String path, int totalDinucleotides, int totalTrinucleotides) {
+                return new Gene(name, type, path, totalDinucleotides, totalTrinucleotides);
+            }
+
+            @Override
+            public ListenableFuture<Gene> processGene(Kingdom kingdom, Organism organism, Tuple<String, String> geneId) {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    /**
+     * Only {@link IFileService#getResultFilePath} is supported.
+     */
+    static IFileService fileService() {
+        return (IFileService) Proxy.newProxyInstance(IFileService.class.getClassLoader(), new Class<?>[]{IFileService.class}, (proxy, method, args) -> {
+            if (method.getName().equals("getResultFilePath")) {
+                return Paths.get((String) args[0], args[1] + (String) args[2]).toString();
+            }
+            throw new UnsupportedOperationException(method.getName());
+        });
+    }
+
+    /**
+     * Returns a gene holding random counts in every array and total.
+     */
+    static Gene randomGene(String name, String type, Random random) {
+        Gene gene = new Gene(name, type, "path/" + name, 0, 0);
+        for (int phase = 0; phase < 3; phase++) {
+            long[] stat = gene.getTrinuStat(phase);
+            int[] pref = gene.getTrinuPref(phase);
+            for (int i = 0; i < stat.length; i++) {
+                stat[i] = random.nextInt(1 << 20) + ((long) random.nextInt(4) << 32);
+                pref[i] = random.nextInt(1 << 16);
+            }
+        }
+        for (int phase = 0; phase < 2; phase++) {
+            long[] stat = gene.getDinuStat(phase);
+            for (int i = 0; i < stat.length; i++) {
+                stat[i] = random.nextInt(1 << 20);
+            }
+        }
+        gene.setTotalCds(random.nextInt(5000));
+        gene.setTotalUnprocessedCds(random.nextInt(50));
+        gene.setTotalTrinucleotide(random.nextInt(1 << 24));
+        gene.setTotalDinucleotide(random.nextInt(1 << 24));
+        gene.setTotalPrefTrinu0(random.nextInt(1 << 16));
+        gene.setTotalPrefTrinu1(random.nextInt(1 << 16));
+        gene.setTotalPrefTrinu2(random.nextInt(1 << 16));
+        return gene;
+    }
+
+    /**
+     * Asserts that the genes hold the same counts and totals.
+     */
+    static void assertSameCounts(Gene expected, Gene actual) {
+        for (int phase = 0; phase < 3; phase++) {
+            assertArrayEquals(expected.getTrinuStat(phase), actual.getTrinuStat(phase));
+            assertArrayEquals(expected.getTrinuPref(phase), actual.getTrinuPref(phase));
+        }
+        for (int phase = 0; phase < 2; phase++) {
+            assertArrayEquals(expected.getDinuStat(phase), actual.getDinuStat(phase));
+        }
+        Assert.assertEquals(expected.getTotalCds(), actual.getTotalCds());
+        Assert.assertEquals(expected.getTotalUnprocessedCds(), actual.getTotalUnprocessedCds());
+        Assert.assertEquals(expected.getTotalTrinucleotide(), actual.getTotalTrinucleotide());
+        Assert.assertEquals(expected.getTotalDinucleotide(), actual.getTotalDinucleotide());
+        Assert.assertEquals(expected.getTotalPrefTrinu0(), actual.getTotalPrefTrinu0());
+        Assert.assertEquals(expected.getTotalPrefTrinu1(), actual.getTotalPrefTrinu1());
+        Assert.assertEquals(expected.getTotalPrefTrinu2(), actual.getTotalPrefTrinu2());
+    }
+
+    static void deleteRecursively(Path directory) throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            List<Path> sorted = paths.sorted(Comparator.reverseOrder()).collect(Collectors.toList());
+            for (Path path : sorted) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+
+    private static void assertArrayEquals(long[] expected, long[] actual) {
+        Assert.assertEquals(expected.length, actual.length);
+        for (int i = 0; i < expected.length; i++) {
+            Assert.assertEquals("index " + i, expected[i], actual[i]);
+        }
+    }
+
+    private static void assertArrayEquals(int[] expected, int[] actual) {
+        Assert.assertEquals(expected.length, actual.length);
+        for (int i = 0; i < expected.length; i++) {
+            Assert.assertEquals("index " + i, expected[i], actual[i]);
+        }
+    }
+}